@@ -0,0 +1,346 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Map of values by cell, the row key and column index of the cell. Row keys
+ * are interned to ints, and each cell is packed into a long of its row id and
+ * column index, so lookups allocate nothing. Entries are kept in insertion
+ * order in parallel arrays and found through an open addressing table of
+ * entry indexes. Null values are allowed.
+ * <p>
+ * Removed entries are only marked as such, and dropped when the arrays next
+ * grow, which makes it safe to remove entries through a {@link Cursor} while
+ * iterating. The map is serialized as its row keys and the row id, column
+ * index and value of each entry.
+ *
+ * @param <V> the type of the values
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class CellMap<V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The cell of a removed entry. Packed cells are never negative.
+     */
+    private static final long REMOVED = -1L;
+
+    /**
+     * The id of each interned row key.
+     */
+    private transient Map<String, Integer> rowIds;
+
+    /**
+     * The interned row keys by id.
+     */
+    private transient List<String> rowKeys;
+
+    /**
+     * The packed cell of each entry, in insertion order.
+     */
+    private transient long[] cells;
+
+    private transient Object[] values;
+
+    /**
+     * The number of entries used in the arrays, including removed ones.
+     */
+    private transient int count;
+
+    private transient int size;
+
+    /**
+     * Entry index + 1 by slot, 0 for an empty slot.
+     */
+    private transient int[] table;
+
+    /**
+     * Creates an empty map.
+     */
+    public CellMap() {
+        init(INITIAL_CAPACITY);
+    }
+
+    private void init(int capacity) {
+        rowIds = new HashMap<String, Integer>();
+        rowKeys = new ArrayList<String>();
+        cells = new long[capacity];
+        values = new Object[capacity];
+        table = new int[capacity * 2];
+        count = 0;
+        size = 0;
+    }
+
+    /**
+     * The number of cells with a value.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * True if no cell has a value.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * True if the cell has a value, which may be null.
+     *
+     * @param rowKey the row key
+     * @param col    the column index
+     * @return
+     */
+    public boolean containsKey(String rowKey, int col) {
+        return size > 0 && find(rowKey, col) >= 0;
+    }
+
+    /**
+     * Gets the value of the cell.
+     *
+     * @param rowKey the row key
+     * @param col    the column index
+     * @return the value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String rowKey, int col) {
+        if (size == 0)
+            return null;
+        final int entry = find(rowKey, col);
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    /**
+     * Sets the value of the cell.
+     *
+     * @param rowKey the row key
+     * @param col    the column index
+     * @param value  the value, may be null
+     * @return the previous value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(String rowKey, int col, V value) {
+        final int entry = find(rowKey, col);
+        if (entry >= 0) {
+            final V previous = (V) values[entry];
+            values[entry] = value;
+            return previous;
+        }
+        if (count == cells.length)
+            rebuild(size * 2 >= cells.length ? cells.length * 2 : cells.length);
+        add(pack(intern(rowKey), col), value);
+        return null;
+    }
+
+    /**
+     * Removes the value of the cell.
+     *
+     * @param rowKey the row key
+     * @param col    the column index
+     * @return the removed value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(String rowKey, int col) {
+        final int entry = size == 0 ? -1 : find(rowKey, col);
+        if (entry < 0)
+            return null;
+        final V previous = (V) values[entry];
+        removeEntry(entry);
+        return previous;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        init(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Gets a cursor over the cells with a value, in the order they were
+     * first set.
+     *
+     * @return
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private static long pack(int rowId, int col) {
+        return ((long) rowId << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long cell) {
+        final long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int intern(String rowKey) {
+        final Integer id = rowIds.get(rowKey);
+        if (id != null)
+            return id;
+        final int newId = rowKeys.size();
+        rowIds.put(rowKey, newId);
+        rowKeys.add(rowKey);
+        return newId;
+    }
+
+    /**
+     * Finds the entry of the cell.
+     *
+     * @return the entry index, or -1 if the cell has no value
+     */
+    private int find(String rowKey, int col) {
+        final Integer id = rowIds.get(rowKey);
+        if (id == null)
+            return -1;
+        final long cell = pack(id, col);
+        final int mask = table.length - 1;
+        for (int slot = mix(cell) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            // slots of removed entries stay taken until the next rebuild
+            if (cells[table[slot] - 1] == cell)
+                return table[slot] - 1;
+        }
+        return -1;
+    }
+
+    private void add(long cell, Object value) {
+        final int entry = count++;
+        cells[entry] = cell;
+        values[entry] = value;
+        size++;
+        final int mask = table.length - 1;
+        int slot = mix(cell) & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = entry + 1;
+    }
+
+    private void removeEntry(int entry) {
+        cells[entry] = REMOVED;
+        values[entry] = null;
+        size--;
+    }
+
+    /**
+     * Rebuilds the arrays and table with the capacity specified, dropping
+     * removed entries and the row keys no longer used.
+     */
+    private void rebuild(int capacity) {
+        final List<String> oldRowKeys = rowKeys;
+        final long[] oldCells = cells;
+        final Object[] oldValues = values;
+        final int oldCount = count;
+        init(capacity);
+        for (int entry = 0; entry < oldCount; entry++) {
+            final long cell = oldCells[entry];
+            if (cell != REMOVED)
+                add(pack(intern(oldRowKeys.get((int) (cell >>> 32))), (int) cell), oldValues[entry]);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (size < count)
+            rebuild(cells.length);
+        out.writeInt(rowKeys.size());
+        for (final String rowKey : rowKeys)
+            out.writeObject(rowKey);
+        out.writeInt(size);
+        for (int entry = 0; entry < count; entry++) {
+            out.writeInt((int) (cells[entry] >>> 32));
+            out.writeInt((int) cells[entry]);
+            out.writeObject(values[entry]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int rowCount = in.readInt();
+        final String[] keys = new String[rowCount];
+        for (int i = 0; i < rowCount; i++)
+            keys[i] = (String) in.readObject();
+        final int entries = in.readInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < entries)
+            capacity <<= 1;
+        init(capacity);
+        for (int i = 0; i < entries; i++) {
+            final int rowId = in.readInt();
+            final int col = in.readInt();
+            add(pack(intern(keys[rowId]), col), in.readObject());
+        }
+    }
+
+    /**
+     * Iterates over the cells with a value. The current cell may be removed,
+     * but no values may be set while iterating.
+     */
+    public class Cursor {
+
+        private int entry = -1;
+
+        /**
+         * Moves to the next cell with a value.
+         *
+         * @return false if there are no more cells
+         */
+        public boolean next() {
+            while (++entry < count) {
+                if (cells[entry] != REMOVED)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * The row key of the current cell.
+         *
+         * @return
+         */
+        public String getRowKey() {
+            return rowKeys.get((int) (cells[entry] >>> 32));
+        }
+
+        /**
+         * The column index of the current cell.
+         *
+         * @return
+         */
+        public int getColIndex() {
+            return (int) cells[entry];
+        }
+
+        /**
+         * The value of the current cell.
+         *
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[entry];
+        }
+
+        /**
+         * Removes the value of the current cell.
+         */
+        public void remove() {
+            removeEntry(entry);
+        }
+    }
+}
@@ -92,7 +92,17 @@ public class Column extends UIInput implements ClientBehaviorHolder {
         /**
          * The submitted filtered value
          */
-        filterValue
+        filterValue,
+
+        /**
+         * Flag indicating whether or not filtering uses a trigram index
+         */
+        filterIndex,
+
+        /**
+         * How the filter value is matched
+         */
+        filterMatchMode
     }
 
     private Object localValue;
@@ -269,6 +279,46 @@ public class Column extends UIInput implements ClientBehaviorHolder {
         getStateHelper().put(PropertyKeys.filterValue, filterValue);
     }
 
+    /**
+     * Updates the filter index flag
+     *
+     * @param value
+     */
+    public void setFilterIndex(Boolean value) {
+        getStateHelper().put(PropertyKeys.filterIndex, value);
+    }
+
+    /**
+     * Flag indicating whether or not the filter of this column uses a trigram
+     * index of its filterBy values. Only used if the sheet has a dataVersion,
+     * the index is rebuilt whenever the version changes.
+     *
+     * @return true if indexed, otherwise false
+     */
+    public Boolean isFilterIndex() {
+        return Boolean.valueOf(getStateHelper().eval(PropertyKeys.filterIndex, Boolean.FALSE).toString());
+    }
+
+    /**
+     * Updates the filter match mode
+     *
+     * @param value
+     */
+    public void setFilterMatchMode(String value) {
+        getStateHelper().put(PropertyKeys.filterMatchMode, value);
+    }
+
+    /**
+     * How the filter value is matched against the filterBy value of each row:
+     * contains (the default), startsWith, exact, range, in or regex. See
+     * {@link FilterPredicate}.
+     *
+     * @return the match mode
+     */
+    public String getFilterMatchMode() {
+        return getStateHelper().eval(PropertyKeys.filterMatchMode, FilterPredicate.CONTAINS).toString();
+    }
+
     /**
      * The filterOptions expression
      *
@@ -0,0 +1,103 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.Arrays;
+
+/**
+ * Maps between the render index of a column, its position among the rendered
+ * columns, and its real index among all columns of the sheet, in both
+ * directions without scanning.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ColumnMapping {
+
+    private final int[] renderedColumns;
+
+    private final int[] renderIndexes;
+
+    /**
+     * Builds the mapping from the real indexes of the rendered columns.
+     *
+     * @param renderedColumns the real indexes of the rendered columns, in
+     *                        render order
+     * @param columnCount     the number of columns, rendered or not
+     * @throws IllegalArgumentException if an index is out of range or repeated
+     */
+    public ColumnMapping(int[] renderedColumns, int columnCount) {
+        this.renderedColumns = renderedColumns.clone();
+        renderIndexes = new int[columnCount];
+        Arrays.fill(renderIndexes, -1);
+        for (int renderIdx = 0; renderIdx < renderedColumns.length; renderIdx++) {
+            final int col = renderedColumns[renderIdx];
+            if (col < 0 || col >= columnCount || renderIndexes[col] != -1)
+                throw new IllegalArgumentException("Invalid column mapping at " + renderIdx + ": " + col);
+            renderIndexes[col] = renderIdx;
+        }
+    }
+
+    /**
+     * Builds the mapping from the rendered flag of each column.
+     *
+     * @param rendered the rendered flag of each column by real index
+     * @return the mapping
+     */
+    public static ColumnMapping of(boolean[] rendered) {
+        int count = 0;
+        for (final boolean flag : rendered) {
+            if (flag)
+                count++;
+        }
+        final int[] renderedColumns = new int[count];
+        int renderIdx = 0;
+        for (int col = 0; col < rendered.length; col++) {
+            if (rendered[col])
+                renderedColumns[renderIdx++] = col;
+        }
+        return new ColumnMapping(renderedColumns, rendered.length);
+    }
+
+    /**
+     * The real indexes of the rendered columns, in render order. The array is
+     * shared and must not be modified.
+     *
+     * @return
+     */
+    public int[] getRenderedColumns() {
+        return renderedColumns;
+    }
+
+    /**
+     * The number of columns, rendered or not.
+     *
+     * @return
+     */
+    public int getColumnCount() {
+        return renderIndexes.length;
+    }
+
+    /**
+     * The real index of the rendered column at the render index specified.
+     *
+     * @param renderIdx the render index
+     * @return the real index
+     * @throws IllegalArgumentException if the index is not a render index
+     */
+    public int getRealIndex(int renderIdx) {
+        if (renderIdx < 0 || renderIdx >= renderedColumns.length)
+            throw new IllegalArgumentException("Invalid index " + renderIdx);
+        return renderedColumns[renderIdx];
+    }
+
+    /**
+     * The render index of the column at the real index specified.
+     *
+     * @param col the real column index
+     * @return the render index, or -1 if the column is not rendered or does
+     *         not exist
+     */
+    public int getRenderIndex(int col) {
+        if (col < 0 || col >= renderIndexes.length)
+            return -1;
+        return renderIndexes[col];
+    }
+}
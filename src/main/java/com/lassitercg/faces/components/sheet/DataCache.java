@@ -0,0 +1,82 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The encoded sheet data of a session by version, bounded by the total size
+ * of the data. Least recently used versions are dropped first, though the
+ * most recently added one is always kept so the sheet that just rendered can
+ * fetch it. All methods are synchronized.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class DataCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    private long bytes;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxBytes the maximum total size of the data held
+     */
+    public DataCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the data held for the version.
+     *
+     * @param version the data version
+     * @return the data, or null if not held
+     */
+    public synchronized byte[] get(String version) {
+        return entries.get(version);
+    }
+
+    /**
+     * Holds the data for the version, dropping the least recently used
+     * versions until the total size fits.
+     *
+     * @param version the data version
+     * @param data    the data
+     */
+    public synchronized void put(String version, byte[] data) {
+        final byte[] previous = entries.put(version, data);
+        if (previous != null)
+            bytes -= previous.length;
+        bytes += data.length;
+        final Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && entries.size() > 1) {
+            final Map.Entry<String, byte[]> entry = eldest.next();
+            bytes -= entry.getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * The number of versions held.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The total size of the data held.
+     *
+     * @return
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,106 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.Map;
+
+/**
+ * A request for the sheet data resource, see {@link SheetResourceHandler}.
+ * Recognizes the resource from the servlet path and path info of the request,
+ * for both prefix and suffix mapped faces servlets, and answers conditional
+ * requests from the ETag alone.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class DataRequest {
+
+    /**
+     * The path resources are served under, see
+     * javax.faces.application.ResourceHandler#RESOURCE_IDENTIFIER.
+     */
+    private static final String RESOURCE_PATH = "/javax.faces.resource/";
+
+    private final String version;
+
+    private DataRequest(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Parses the request.
+     *
+     * @param servletPath the servlet path of the request
+     * @param pathInfo    the path info of the request, null for a suffix
+     *                    mapped faces servlet
+     * @param params      the request parameters
+     * @return the data request, or null if the request is for another
+     * resource
+     */
+    public static DataRequest parse(String servletPath, String pathInfo, Map<String, String> params) {
+        final String version = params.get("v");
+        if (!SheetResourceHandler.LIBRARY.equals(params.get("ln")) || version == null || version.isEmpty())
+            return null;
+        if (!SheetResourceHandler.DATA_RESOURCE.equals(getResourceName(servletPath, pathInfo)))
+            return null;
+        return new DataRequest(version);
+    }
+
+    /**
+     * Gets the name of the resource requested.
+     *
+     * @param servletPath the servlet path of the request
+     * @param pathInfo    the path info of the request, null for a suffix
+     *                    mapped faces servlet
+     * @return the resource name, or null if not a resource request
+     */
+    public static String getResourceName(String servletPath, String pathInfo) {
+        final String path = pathInfo == null ? servletPath : pathInfo;
+        if (path == null || !path.startsWith(RESOURCE_PATH))
+            return null;
+        String name = path.substring(RESOURCE_PATH.length());
+        if (pathInfo == null) {
+            // strip the extension the faces servlet is mapped to
+            final int dot = name.lastIndexOf('.');
+            if (dot >= 0)
+                name = name.substring(0, dot);
+        }
+        return name;
+    }
+
+    /**
+     * The data version requested.
+     *
+     * @return
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * The ETag of the data, the quoted version.
+     *
+     * @return
+     */
+    public String getETag() {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * True if the If-None-Match header lists the ETag of the data, so the
+     * client's copy is current.
+     *
+     * @param ifNoneMatch the If-None-Match header, may be null
+     * @return
+     */
+    public boolean isNotModified(String ifNoneMatch) {
+        if (ifNoneMatch == null)
+            return false;
+        final String etag = getETag();
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if (candidate.equals(etag) || candidate.equals("*"))
+                return true;
+        }
+        return false;
+    }
+}
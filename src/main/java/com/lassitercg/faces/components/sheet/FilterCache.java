@@ -0,0 +1,146 @@
+package com.lassitercg.faces.components.sheet;
+
+import com.lassitercg.faces.components.util.TrigramIndex;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The filter indexes and the previous filter result of one view of a sheet,
+ * held in the session. Each view
+ * instance of a sheet has its own cache, so two views of the same page (e.g.
+ * in two browser tabs) never share one, and the cache only answers for the
+ * data it was built from: it is cleared whenever the data key passed to
+ * {@link #validate(String)} changes.
+ * <p>
+ * The session holds the caches of the most recently used views only. All
+ * methods are synchronized, as requests of the same session may run
+ * concurrently.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class FilterCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of sheet views with a cache per session.
+     */
+    public static final int MAX_VIEWS = 8;
+
+    private static final String SESSION_KEY = FilterCache.class.getName();
+
+    private String dataKey;
+
+    private final Map<String, TrigramIndex> indexes = new HashMap<String, TrigramIndex>();
+
+    /**
+     * The filter value by column key of the previous filter, null if none.
+     */
+    private Map<String, String> filterValues;
+
+    private int[] rows;
+
+    /**
+     * Gets the cache of the sheet view from the session map.
+     *
+     * @param sessionMap the session map
+     * @param mutex      the lock of the session
+     * @param key        identifies the view instance of the sheet
+     * @param create     true to create the cache if there is none
+     * @return the cache, or null if there is none and create is false
+     */
+    public static FilterCache forView(Map<String, Object> sessionMap, Object mutex, String key, boolean create) {
+        final SessionLru<FilterCache> caches = SessionLru.get(sessionMap, mutex, SESSION_KEY, MAX_VIEWS, create);
+        if (caches == null)
+            return null;
+        synchronized (caches) {
+            FilterCache cache = caches.get(key);
+            if (cache == null && create) {
+                cache = new FilterCache();
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Clears the cache if it was built from other data.
+     *
+     * @param dataKey identifies the data, e.g. the data version, the row count
+     *                and the row keys
+     */
+    public synchronized void validate(String dataKey) {
+        if (!dataKey.equals(this.dataKey)) {
+            clear();
+            this.dataKey = dataKey;
+        }
+    }
+
+    /**
+     * Drops everything held, e.g. after rows were edited without changing the
+     * data version.
+     */
+    public synchronized void clear() {
+        indexes.clear();
+        filterValues = null;
+        rows = null;
+    }
+
+    /**
+     * Gets the index of the filterBy values of a column.
+     *
+     * @param filterBy the filterBy expression of the column
+     * @return the index, or null if there is none
+     */
+    public synchronized TrigramIndex getIndex(String filterBy) {
+        return indexes.get(filterBy);
+    }
+
+    /**
+     * Holds the index of the filterBy values of a column.
+     *
+     * @param filterBy the filterBy expression of the column
+     * @param index    the index
+     */
+    public synchronized void putIndex(String filterBy, TrigramIndex index) {
+        indexes.put(filterBy, index);
+    }
+
+    /**
+     * Gets the rows matched by the previous filter if the filter specified
+     * refines it: every column filtered before is still filtered, with a
+     * value that refines its previous one (see
+     * {@link FilterPredicate#refines(String, String, String)}). Columns may
+     * be filtered in addition.
+     *
+     * @param filterValues the filter value by column key
+     * @param matchModes   the match mode by column key
+     * @return the row indexes, not to be modified, or null if all rows must be
+     * checked
+     */
+    public synchronized int[] getRefinedRows(Map<String, String> filterValues, Map<String, String> matchModes) {
+        if (this.filterValues == null)
+            return null;
+        for (final Map.Entry<String, String> entry : this.filterValues.entrySet()) {
+            final String filterValue = filterValues.get(entry.getKey());
+            if (filterValue == null
+                    || !FilterPredicate.refines(matchModes.get(entry.getKey()), entry.getValue(), filterValue))
+                return null;
+        }
+        return rows;
+    }
+
+    /**
+     * Holds the rows matched by a filter, for the next filter to refine.
+     *
+     * @param filterValues the filter value by column key
+     * @param rows         the indexes of the matching rows, not to be modified
+     *                     afterwards
+     */
+    public synchronized void putResult(Map<String, String> filterValues, int[] rows) {
+        this.filterValues = new HashMap<String, String>(filterValues);
+        this.rows = rows;
+    }
+}
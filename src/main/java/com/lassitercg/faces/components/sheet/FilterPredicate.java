@@ -0,0 +1,335 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A column filter value compiled for a match mode, matched against the
+ * filterBy value of each row. Text modes compare the string value of the row
+ * ignoring case; the range mode compares numbers and dates on their primitive
+ * values. A row without a value never matches, and neither does any row if
+ * the filter value can't be parsed for the mode.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public abstract class FilterPredicate {
+
+    /**
+     * Matches values containing the filter value (the default).
+     */
+    public static final String CONTAINS = "contains";
+
+    /**
+     * Matches values starting with the filter value.
+     */
+    public static final String STARTS_WITH = "startsWith";
+
+    /**
+     * Matches values equal to the filter value.
+     */
+    public static final String EXACT = "exact";
+
+    /**
+     * Matches numbers or dates in a range: <code>&gt;100</code>,
+     * <code>&lt;=100</code>, <code>100..500</code>, <code>100..</code>,
+     * <code>..500</code> or a single value. Dates are given as
+     * <code>yyyy-MM-dd</code>, optionally followed by <code>HH:mm</code> or
+     * <code>HH:mm:ss</code>.
+     */
+    public static final String RANGE = "range";
+
+    /**
+     * Matches values equal to one of the comma separated filter values.
+     */
+    public static final String IN = "in";
+
+    /**
+     * Matches values containing a match of the filter value as a regular
+     * expression.
+     */
+    public static final String REGEX = "regex";
+
+    private static final String[] DATE_PATTERNS = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd HH:mm", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd"};
+
+    /**
+     * True if the filterBy value of a row matches.
+     *
+     * @param value the filterBy value, may be null
+     * @return
+     */
+    public abstract boolean matches(Object value);
+
+    /**
+     * Compiles the filter value for the match mode.
+     *
+     * @param matchMode   the match mode, null for {@link #CONTAINS}
+     * @param filterValue the filter value
+     * @return the predicate
+     * @throws IllegalArgumentException if the match mode is unknown
+     */
+    public static FilterPredicate compile(String matchMode, String filterValue) {
+        final String lower = filterValue.toLowerCase();
+        if (matchMode == null || CONTAINS.equalsIgnoreCase(matchMode))
+            return new Contains(lower);
+        if (STARTS_WITH.equalsIgnoreCase(matchMode))
+            return new StartsWith(lower);
+        if (EXACT.equalsIgnoreCase(matchMode))
+            return new Exact(lower);
+        if (IN.equalsIgnoreCase(matchMode))
+            return new In(lower);
+        if (REGEX.equalsIgnoreCase(matchMode))
+            return compileRegex(filterValue);
+        if (RANGE.equalsIgnoreCase(matchMode))
+            return compileRange(filterValue.trim());
+        throw new IllegalArgumentException("Invalid filter match mode " + matchMode);
+    }
+
+    /**
+     * True if every value matched by the newer filter value is also matched by
+     * the older one in the match mode specified, so the rows matching the
+     * newer value can be found among those matching the older one.
+     *
+     * @param matchMode the match mode, null for {@link #CONTAINS}
+     * @param older     the older filter value
+     * @param newer     the newer filter value
+     * @return
+     */
+    public static boolean refines(String matchMode, String older, String newer) {
+        final String olderLower = older.toLowerCase();
+        final String newerLower = newer.toLowerCase();
+        if (matchMode == null || CONTAINS.equalsIgnoreCase(matchMode))
+            return newerLower.contains(olderLower);
+        if (STARTS_WITH.equalsIgnoreCase(matchMode))
+            return newerLower.startsWith(olderLower);
+        return older.equals(newer);
+    }
+
+    private static FilterPredicate compileRegex(String filterValue) {
+        try {
+            return new Regex(Pattern.compile(filterValue, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        } catch (PatternSyntaxException e) {
+            return new None();
+        }
+    }
+
+    private static FilterPredicate compileRange(String filterValue) {
+        String from = null;
+        String to = null;
+        boolean fromInclusive = true;
+        boolean toInclusive = true;
+        final int dots = filterValue.indexOf("..");
+        if (dots >= 0) {
+            from = filterValue.substring(0, dots).trim();
+            to = filterValue.substring(dots + 2).trim();
+        } else if (filterValue.startsWith(">=")) {
+            from = filterValue.substring(2).trim();
+        } else if (filterValue.startsWith("<=")) {
+            to = filterValue.substring(2).trim();
+        } else if (filterValue.startsWith(">")) {
+            from = filterValue.substring(1).trim();
+            fromInclusive = false;
+        } else if (filterValue.startsWith("<")) {
+            to = filterValue.substring(1).trim();
+            toInclusive = false;
+        } else {
+            from = filterValue.startsWith("=") ? filterValue.substring(1).trim() : filterValue;
+            to = from;
+        }
+        if (from != null && from.isEmpty())
+            from = null;
+        if (to != null && to.isEmpty())
+            to = null;
+        if (from == null && to == null)
+            return new None();
+
+        try {
+            final double lower = from == null ? Double.NEGATIVE_INFINITY : Double.parseDouble(from);
+            final double upper = to == null ? Double.POSITIVE_INFINITY : Double.parseDouble(to);
+            return new NumberRange(lower, fromInclusive, upper, toInclusive);
+        } catch (NumberFormatException e) {
+            // not numeric, try dates
+        }
+
+        // a day without a time covers the whole day
+        final long lower = from == null ? Long.MIN_VALUE : parseDate(from, !fromInclusive);
+        final long upper = to == null ? Long.MAX_VALUE : parseDate(to, toInclusive);
+        if ((from != null && lower == Long.MIN_VALUE) || (to != null && upper == Long.MIN_VALUE))
+            return new None();
+        return new DateRange(lower, fromInclusive, upper, toInclusive);
+    }
+
+    /**
+     * Parses the date, as the last millisecond of the day if endOfDay and
+     * there is no time.
+     *
+     * @return the time in milliseconds, or Long.MIN_VALUE if not a date
+     */
+    private static long parseDate(String value, boolean endOfDay) {
+        for (String pattern : DATE_PATTERNS) {
+            final SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            try {
+                final Date date = format.parse(value);
+                if (format.format(date).length() != value.length())
+                    continue;
+                if (endOfDay && pattern.length() == 10) {
+                    final Calendar calendar = Calendar.getInstance();
+                    calendar.setTime(date);
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                    return calendar.getTimeInMillis() - 1;
+                }
+                return date.getTime();
+            } catch (ParseException e) {
+                // try the next pattern
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static class None extends FilterPredicate {
+
+        @Override
+        public boolean matches(Object value) {
+            return false;
+        }
+    }
+
+    private static class Contains extends FilterPredicate {
+
+        private final String filterValue;
+
+        Contains(String filterValue) {
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && value.toString().toLowerCase().contains(filterValue);
+        }
+    }
+
+    private static class StartsWith extends FilterPredicate {
+
+        private final String filterValue;
+
+        StartsWith(String filterValue) {
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && value.toString().toLowerCase().startsWith(filterValue);
+        }
+    }
+
+    private static class Exact extends FilterPredicate {
+
+        private final String filterValue;
+
+        Exact(String filterValue) {
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && value.toString().toLowerCase().equals(filterValue);
+        }
+    }
+
+    private static class In extends FilterPredicate {
+
+        private final Set<String> filterValues = new HashSet<String>();
+
+        In(String filterValue) {
+            for (String value : filterValue.split(","))
+                filterValues.add(value.trim());
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && filterValues.contains(value.toString().toLowerCase().trim());
+        }
+    }
+
+    private static class Regex extends FilterPredicate {
+
+        private final Pattern pattern;
+
+        Regex(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && pattern.matcher(value.toString()).find();
+        }
+    }
+
+    private static class NumberRange extends FilterPredicate {
+
+        private final double lower;
+        private final boolean lowerInclusive;
+        private final double upper;
+        private final boolean upperInclusive;
+
+        NumberRange(double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            final double number;
+            if (value instanceof Number) {
+                number = ((Number) value).doubleValue();
+            } else if (value instanceof String) {
+                try {
+                    number = Double.parseDouble(((String) value).trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+            return (lowerInclusive ? number >= lower : number > lower)
+                    && (upperInclusive ? number <= upper : number < upper);
+        }
+    }
+
+    private static class DateRange extends FilterPredicate {
+
+        private final long lower;
+        private final boolean lowerInclusive;
+        private final long upper;
+        private final boolean upperInclusive;
+
+        DateRange(long lower, boolean lowerInclusive, long upper, boolean upperInclusive) {
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            final long time;
+            if (value instanceof Date)
+                time = ((Date) value).getTime();
+            else if (value instanceof Calendar)
+                time = ((Calendar) value).getTimeInMillis();
+            else
+                return false;
+            return (lowerInclusive ? time >= lower : time > lower)
+                    && (upperInclusive ? time <= upper : time < upper);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.lassitercg.faces.components.sheet;
+
+import com.lassitercg.faces.components.util.EcmaScriptEscaper;
+import com.lassitercg.faces.components.util.PropertyPath;
+import com.lassitercg.faces.components.util.VarWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Encodes the row arrays of a sheet in chunks of rows on an executor. The
+ * worker threads only read the row keys and cell values through a
+ * {@link RowReader}, and escape the cells of the plain columns, the columns
+ * without a converter. Cells of the other columns are converted on the request
+ * thread when the chunk is written, through a {@link CellConverter}, as
+ * converters may depend on the faces context. The chunks are written in
+ * order, and each row exactly as the renderer encodes rows sequentially, so
+ * the output is identical.
+ * <p>
+ * A chunk that can't be read this way (a row key or cell that doesn't
+ * resolve, or a failure on the worker) is reported as not written and must be
+ * encoded sequentially by the caller instead.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ParallelRowEncoder {
+
+    /**
+     * The number of rows encoded per chunk.
+     */
+    public static final int CHUNK_SIZE = 500;
+
+    /**
+     * Reads rows on the worker threads. Implementations must never touch the
+     * faces context or the request map.
+     */
+    public interface RowReader {
+
+        /**
+         * Reads the key of the row.
+         *
+         * @param row the row object, as passed to the encoder
+         * @return the row key, or null if it can't be read on a worker
+         */
+        String readRowKey(Object row);
+
+        /**
+         * Looks up the row object the cells of the row key are read from.
+         *
+         * @param rowKey the row key
+         * @return the row object
+         */
+        Object readRowData(String rowKey);
+
+        /**
+         * Reads the value of a cell.
+         *
+         * @param rowData the row object the cells are read from
+         * @param i       the render index of the column
+         * @return the value, or {@link PropertyPath#UNRESOLVED} if it can't
+         * be read on a worker
+         */
+        Object readCell(Object rowData, int i);
+    }
+
+    /**
+     * Converts the cells of the columns that are not plain, on the request
+     * thread.
+     */
+    public interface CellConverter {
+
+        /**
+         * Converts a non-null cell value to its render string.
+         *
+         * @param i       the render index of the column
+         * @param rowData the row object the cell was read from
+         * @param value   the value of the cell
+         * @return the render string
+         */
+        String getAsString(int i, Object rowData, Object value);
+    }
+
+    private final CellConverter converter;
+
+    private final boolean[] plain;
+
+    private final List<Future<Chunk>> chunks;
+
+    /**
+     * Starts encoding the rows on the executor.
+     *
+     * @param executor  the executor the chunks are read on
+     * @param reader    reads the rows on the worker threads
+     * @param converter converts the cells of the columns that are not plain
+     * @param plain     per render index, true if the column has no converter
+     *                  and its cells are rendered with toString()
+     * @param values    the rows to encode
+     */
+    public ParallelRowEncoder(ExecutorService executor, RowReader reader, CellConverter converter, boolean[] plain,
+                              List<Object> values) {
+        this.converter = converter;
+        this.plain = plain.clone();
+        final int count = (values.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new ArrayList<Future<Chunk>>(count);
+        for (int i = 0; i < count; i++) {
+            final int first = i * CHUNK_SIZE;
+            final int last = Math.min(first + CHUNK_SIZE, values.size());
+            chunks.add(executor.submit(new ChunkReader(reader, this.plain, values.subList(first, last))));
+        }
+    }
+
+    /**
+     * The number of chunks.
+     *
+     * @return
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Waits for the chunk specified and appends its row arrays to the data
+     * array, converting the cells of the columns that are not plain.
+     *
+     * @param chunk   the chunk index, chunk i starts at row i * CHUNK_SIZE
+     * @param vwData  the data array
+     * @param rowKeys the array receiving the row key of each row, indexed
+     *                from the first row of chunk 0
+     * @return true if written, false if the chunk must be encoded
+     * sequentially
+     * @throws IOException
+     */
+    public boolean writeChunk(int chunk, VarWriter vwData, String[] rowKeys) throws IOException {
+        final Chunk result;
+        try {
+            result = chunks.get(chunk).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // encoded sequentially, where the failure is reported if it recurs
+            return false;
+        }
+        if (result == null)
+            return false;
+
+        final int first = chunk * CHUNK_SIZE;
+        for (int row = 0; row < result.rowKeys.length; row++) {
+            rowKeys[first + row] = result.rowKeys[row];
+            final Object[] cells = result.cells[row];
+            VarWriter vwRow = vwData.openArray();
+            for (int i = 0; i < cells.length; i++) {
+                final Object cell = cells[i];
+                if (plain[i])
+                    vwRow.appendArrayValue((String) cell, false);
+                else
+                    vwRow.appendArrayValue(
+                            cell == null ? null : converter.getAsString(i, result.rowData[row], cell), true);
+            }
+            vwRow.closeVar();
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the chunks that are still pending, e.g. after a failure.
+     */
+    public void cancel() {
+        for (Future<Chunk> chunk : chunks)
+            chunk.cancel(false);
+    }
+
+    /**
+     * The rows of a chunk as read on a worker: plain cells are quoted and
+     * escaped, the others are the raw values.
+     */
+    private static class Chunk {
+
+        private final String[] rowKeys;
+        private final Object[] rowData;
+        private final Object[][] cells;
+
+        Chunk(int size) {
+            rowKeys = new String[size];
+            rowData = new Object[size];
+            cells = new Object[size][];
+        }
+    }
+
+    /**
+     * Reads a range of rows.
+     */
+    private static class ChunkReader implements Callable<Chunk> {
+
+        private final RowReader reader;
+        private final boolean[] plain;
+        private final List<Object> values;
+
+        ChunkReader(RowReader reader, boolean[] plain, List<Object> values) {
+            this.reader = reader;
+            this.plain = plain;
+            this.values = values;
+        }
+
+        public Chunk call() {
+            final Chunk chunk = new Chunk(values.size());
+            final StringBuilder sb = new StringBuilder();
+            for (int row = 0; row < values.size(); row++) {
+                final String rowKey = reader.readRowKey(values.get(row));
+                if (rowKey == null)
+                    return null;
+                // cells are read from the row mapped to the key, as sequentially
+                final Object rowData = reader.readRowData(rowKey);
+                final Object[] cells = new Object[plain.length];
+                for (int i = 0; i < plain.length; i++) {
+                    final Object cell = reader.readCell(rowData, i);
+                    if (cell == PropertyPath.UNRESOLVED)
+                        return null;
+                    if (plain[i]) {
+                        sb.setLength(0);
+                        sb.append('"');
+                        if (cell != null)
+                            EcmaScriptEscaper.escape(cell.toString(), sb);
+                        sb.append('"');
+                        cells[i] = sb.toString();
+                    } else {
+                        cells[i] = cell;
+                    }
+                }
+                chunk.rowKeys[row] = rowKey;
+                chunk.rowData[row] = rowData;
+                chunk.cells[row] = cells;
+            }
+            return chunk;
+        }
+    }
+}
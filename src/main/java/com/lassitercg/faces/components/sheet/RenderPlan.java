@@ -0,0 +1,263 @@
+package com.lassitercg.faces.components.sheet;
+
+import org.primefaces.util.ComponentUtils;
+
+import javax.el.ValueExpression;
+import javax.faces.context.FacesContext;
+import javax.faces.convert.Converter;
+import java.util.List;
+
+/**
+ * Column metadata of a sheet resolved once per request. Holds the mapping of
+ * the rendered columns, the value expressions and converters of the columns, the
+ * style class and read only attributes that are literals rather than per row
+ * expressions, and the row key codec, so the encode, validate and update
+ * passes don't have to walk and re-evaluate the columns for every cell.
+ * <p>
+ * Obtain an instance with {@link Sheet#getRenderPlan(FacesContext)}.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RenderPlan {
+
+    private final Column[] columns;
+
+    private final ColumnMapping mapping;
+
+    private final ValueExpression[] valueExpressions;
+
+    private final Converter[] converters;
+
+    private final boolean[] convertersResolved;
+
+    private final boolean[] styleClassLiteral;
+
+    private final String[] styleClasses;
+
+    private final boolean[] readonlyCellLiteral;
+
+    private final boolean[] readonlyCells;
+
+    private final boolean rowStyleClassLiteral;
+
+    private final String rowStyleClass;
+
+    private final RowKeyCodec rowKeyCodec;
+
+    /**
+     * Builds the plan for the sheet, evaluating the literal attributes of each
+     * column.
+     *
+     * @param sheet           the sheet
+     * @param renderedColumns the real indexes of the columns the client
+     *                        rendered, or null to evaluate the rendered
+     *                        attribute of each column
+     */
+    RenderPlan(Sheet sheet, int[] renderedColumns) {
+        final List<Column> list = sheet.getColumns();
+        final int size = list.size();
+        columns = list.toArray(new Column[size]);
+        valueExpressions = new ValueExpression[size];
+        converters = new Converter[size];
+        convertersResolved = new boolean[size];
+        styleClassLiteral = new boolean[size];
+        styleClasses = new String[size];
+        readonlyCellLiteral = new boolean[size];
+        readonlyCells = new boolean[size];
+
+        final boolean[] rendered = renderedColumns == null ? new boolean[size] : null;
+        for (int col = 0; col < size; col++) {
+            final Column column = columns[col];
+            if (rendered != null)
+                rendered[col] = column.isRendered();
+            valueExpressions[col] = column.getValueExpression("value");
+            styleClassLiteral[col] = column.getValueExpression("styleClass") == null;
+            if (styleClassLiteral[col])
+                styleClasses[col] = column.getStyleClass();
+            readonlyCellLiteral[col] = column.getValueExpression("readonlyCell") == null;
+            if (readonlyCellLiteral[col])
+                readonlyCells[col] = column.isReadonlyCell();
+        }
+        mapping = rendered == null ? new ColumnMapping(renderedColumns, size) : ColumnMapping.of(rendered);
+
+        rowStyleClassLiteral = sheet.getValueExpression("rowStyleClass") == null;
+        rowStyleClass = rowStyleClassLiteral ? sheet.getRowStyleClass() : null;
+        rowKeyCodec = sheet.getRowKeyCodec();
+    }
+
+    /**
+     * The column at the real index specified.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public Column getColumn(int col) {
+        return columns[col];
+    }
+
+    /**
+     * The number of columns, rendered or not.
+     *
+     * @return
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * The real indexes of the rendered columns, in render order. The array is
+     * shared and must not be modified.
+     *
+     * @return
+     */
+    public int[] getRenderedColumns() {
+        return mapping.getRenderedColumns();
+    }
+
+    /**
+     * The mapping between the render and real indexes of the columns.
+     *
+     * @return
+     */
+    public ColumnMapping getMapping() {
+        return mapping;
+    }
+
+    /**
+     * The value expression of the column.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public ValueExpression getValueExpression(int col) {
+        return valueExpressions[col];
+    }
+
+    /**
+     * The converter of the column, evaluating the value of the cell to look
+     * up a converter by type. See
+     * {@link #getConverter(FacesContext, Sheet, int, Object, Object)}.
+     *
+     * @param context the faces context
+     * @param sheet   the sheet
+     * @param col     the real column index
+     * @param row     the row object of the cell being converted
+     * @return the converter, or null if there is none
+     */
+    public Converter getConverter(FacesContext context, Sheet sheet, int col, Object row) {
+        if (convertersResolved[col])
+            return converters[col];
+        final ValueExpression ve = valueExpressions[col];
+        return getConverter(context, sheet, col, row, ve == null ? null : sheet.getRowValue(context, ve, row));
+    }
+
+    /**
+     * The converter of the column. An explicit converter of the column is
+     * kept from the first call. Otherwise the converter by type is looked up
+     * with the row specified as the row var, and kept once it was resolved for
+     * a non-null value; for a null value the type of the expression may not
+     * be known yet, so it is looked up again for the next cell.
+     *
+     * @param context the faces context
+     * @param sheet   the sheet
+     * @param col     the real column index
+     * @param row     the row object of the cell being converted
+     * @param value   the value of the cell
+     * @return the converter, or null if there is none
+     */
+    public Converter getConverter(FacesContext context, Sheet sheet, int col, Object row, Object value) {
+        if (convertersResolved[col])
+            return converters[col];
+        Converter converter = columns[col].getConverter();
+        if (converter == null) {
+            context.getExternalContext().getRequestMap().put(sheet.getVar(), row);
+            converter = ComponentUtils.getConverter(context, columns[col]);
+            if (value == null)
+                return converter;
+        }
+        converters[col] = converter;
+        convertersResolved[col] = true;
+        return converter;
+    }
+
+    /**
+     * True if the converter of the column was resolved for the rest of the
+     * request, rather than looked up again for the next cell.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public boolean isConverterResolved(int col) {
+        return convertersResolved[col];
+    }
+
+    /**
+     * True if the style class of the column is a literal (possibly null)
+     * rather than a per row expression.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public boolean isStyleClassLiteral(int col) {
+        return styleClassLiteral[col];
+    }
+
+    /**
+     * The literal style class of the column.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public String getStyleClass(int col) {
+        return styleClasses[col];
+    }
+
+    /**
+     * True if the readonlyCell attribute of the column is a literal rather
+     * than a per row expression.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public boolean isReadonlyCellLiteral(int col) {
+        return readonlyCellLiteral[col];
+    }
+
+    /**
+     * The literal readonlyCell value of the column.
+     *
+     * @param col the real column index
+     * @return
+     */
+    public boolean isReadonlyCell(int col) {
+        return readonlyCells[col];
+    }
+
+    /**
+     * True if the row style class of the sheet is a literal rather than a per
+     * row expression.
+     *
+     * @return
+     */
+    public boolean isRowStyleClassLiteral() {
+        return rowStyleClassLiteral;
+    }
+
+    /**
+     * The literal row style class of the sheet.
+     *
+     * @return
+     */
+    public String getRowStyleClass() {
+        return rowStyleClass;
+    }
+
+    /**
+     * The codec encoding the row keys of the sheet.
+     *
+     * @return
+     */
+    public RowKeyCodec getRowKeyCodec() {
+        return rowKeyCodec;
+    }
+}
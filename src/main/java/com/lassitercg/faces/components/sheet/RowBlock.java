@@ -0,0 +1,59 @@
+package com.lassitercg.faces.components.sheet;
+
+/**
+ * A block of rows of a lazy sheet: up to the block size rows from the first
+ * row requested, clamped to the rows of the view. The client requests blocks
+ * at multiples of the block size, so consecutive blocks cover the view
+ * without gaps or overlap and the last one holds the remaining rows.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RowBlock {
+
+    private final int first;
+
+    private final int count;
+
+    /**
+     * Creates the block starting at the row specified.
+     *
+     * @param first     the first row requested
+     * @param blockSize the number of rows per block
+     * @param rowCount  the number of rows in the view
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public RowBlock(int first, int blockSize, int rowCount) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Invalid block size " + blockSize);
+        this.first = Math.max(0, Math.min(first, rowCount));
+        this.count = Math.min(blockSize, rowCount - this.first);
+    }
+
+    /**
+     * The index of the first row of the block in the view.
+     *
+     * @return
+     */
+    public int getFirst() {
+        return first;
+    }
+
+    /**
+     * The number of rows in the block, 0 if the first row requested is past
+     * the end of the view.
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The index after the last row of the block.
+     *
+     * @return
+     */
+    public int getEnd() {
+        return first + count;
+    }
+}
@@ -0,0 +1,384 @@
+package com.lassitercg.faces.components.sheet;
+
+import com.lassitercg.faces.components.util.PropertyPath;
+import com.lassitercg.faces.components.util.TrigramIndex;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.el.ValueExpression;
+import javax.faces.context.FacesContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * The column filters of a sheet, resolved once so the rows can be matched
+ * without looking up the filter values per row. A row matches if the filterBy
+ * value of every filtered column matches the filter value in the match mode of
+ * the column (see {@link FilterPredicate}), compiled once per request.
+ * <p>
+ * Contains filters of columns with filterIndex set are matched through a {@link TrigramIndex} of
+ * their lower-cased filterBy values, held in the {@link FilterCache} of the
+ * view of the sheet and rebuilt when the data changes: the dataVersion, the
+ * row count or the row keys. The other filters are only evaluated for
+ * the rows the indexes matched.
+ * <p>
+ * With a dataVersion, the filter values and matching rows are also held in
+ * the filter cache. If the next filter of the same data only refines the previous
+ * one (every previously filtered column still has a filter value that
+ * refines its previous one, with optionally more columns filtered), only the
+ * previously matching rows are filtered again.
+ * <p>
+ * Large row counts can be filtered in chunks on the {@link SheetExecutor} if
+ * the filterBy expressions of all filtered columns are plain property paths;
+ * the matching rows are collected in their original order either way.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RowFilter {
+
+    /**
+     * The number of rows matched per parallel chunk.
+     */
+    public static final int CHUNK_SIZE = 2000;
+
+    private final FacesContext context;
+
+    private final Sheet sheet;
+
+    private final List<ColumnFilter> filters = new ArrayList<ColumnFilter>();
+
+    /**
+     * The data version, null if not versioned.
+     */
+    private final String version;
+
+    /**
+     * Resolves the filters of the sheet.
+     *
+     * @param context the faces context
+     * @param sheet   the sheet
+     */
+    public RowFilter(FacesContext context, Sheet sheet) {
+        this.context = context;
+        this.sheet = sheet;
+        final Object dataVersion = sheet.getDataVersion();
+        this.version = dataVersion == null ? null : dataVersion.toString();
+        final List<Column> columns = sheet.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            final Column col = columns.get(i);
+            final String filterValue = col.getFilterValue();
+            if (StringUtils.isEmpty(filterValue))
+                continue;
+            final ValueExpression veFilterBy = col.getValueExpression("filterBy");
+            final String matchMode = col.getFilterMatchMode();
+            final String key = i + ":" + matchMode + ":"
+                    + (veFilterBy == null ? "" : veFilterBy.getExpressionString());
+            // the index only answers contains queries
+            final boolean indexed = version != null && veFilterBy != null && col.isFilterIndex()
+                    && FilterPredicate.CONTAINS.equalsIgnoreCase(matchMode);
+            filters.add(new ColumnFilter(key, veFilterBy, veFilterBy == null ? null
+                    : sheet.getPropertyPath(veFilterBy), veFilterBy == null ? col.getFilterBy() : null,
+                    matchMode, filterValue, indexed));
+        }
+    }
+
+    /**
+     * Drops the filter indexes and previous filter results of the sheet, e.g.
+     * after rows were edited without changing the data version.
+     *
+     * @param context the faces context
+     * @param sheet   the sheet
+     */
+    public static void invalidate(FacesContext context, Sheet sheet) {
+        if (context.getExternalContext().getSession(false) == null)
+            return;
+        final FilterCache cache = sheet.getFilterCache(context, false);
+        if (cache != null)
+            cache.clear();
+    }
+
+    /**
+     * True if the row matches all column filters. May put the row var in the
+     * request map.
+     *
+     * @param row the row
+     * @return
+     */
+    public boolean matches(Object row) {
+        return matches(row, filters);
+    }
+
+    /**
+     * Gets the indexes of the rows matching all column filters.
+     *
+     * @param values   all rows of the sheet
+     * @param parallel true to match the rows on multiple threads if possible
+     * @return the indexes of the matching rows, ascending, in an array the
+     * caller may modify
+     */
+    public int[] filterIndexes(List<Object> values, boolean parallel) {
+        if (filters.isEmpty()) {
+            final int[] all = new int[values.size()];
+            for (int i = 0; i < all.length; i++)
+                all[i] = i;
+            return all;
+        }
+
+        final FilterCache cache = version == null ? null : getFilterCache(values);
+        // the row indexes still to check, null for all
+        int[] candidates = cache == null ? null : cache.getRefinedRows(getFilterValues(), getMatchModes());
+        final List<ColumnFilter> remaining = new ArrayList<ColumnFilter>();
+        for (final ColumnFilter filter : filters) {
+            if (!filter.indexed) {
+                remaining.add(filter);
+                continue;
+            }
+            final int[] found = getIndex(cache, filter, values).find(filter.filterValue.toLowerCase());
+            candidates = candidates == null ? found : TrigramIndex.intersect(candidates, found);
+        }
+
+        int[] matches = candidates;
+        if (!remaining.isEmpty()) {
+            final int count = candidates == null ? values.size() : candidates.length;
+            if (parallel && count > CHUNK_SIZE && isThreadSafe(remaining))
+                matches = filterParallel(values, candidates, remaining);
+            else
+                matches = filter(values, candidates, 0, count, remaining);
+        }
+        if (cache == null)
+            return matches;
+        cache.putResult(getFilterValues(), matches);
+        // the cached result must stay as is, the caller may sort its copy
+        return matches.clone();
+    }
+
+    private boolean matches(Object row, List<ColumnFilter> filters) {
+        for (final ColumnFilter filter : filters) {
+            final Object filterBy = filter.veFilterBy == null ? filter.filterBy
+                    : sheet.getRowValue(context, filter.veFilterBy, row);
+            if (!filter.matches(filterBy))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Matches the candidates from first to last.
+     *
+     * @return the indexes of the matching rows
+     */
+    private int[] filter(List<Object> values, int[] candidates, int first, int last, List<ColumnFilter> filters) {
+        final int[] result = new int[last - first];
+        int size = 0;
+        try {
+            for (int i = first; i < last; i++) {
+                final int row = candidates == null ? i : candidates[i];
+                if (matches(values.get(row), filters))
+                    result[size++] = row;
+            }
+        } finally {
+            context.getExternalContext().getRequestMap().remove(sheet.getVar());
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * True if all filterBy expressions are plain property paths.
+     */
+    private boolean isThreadSafe(List<ColumnFilter> filters) {
+        for (final ColumnFilter filter : filters) {
+            if (filter.veFilterBy != null && filter.path == null)
+                return false;
+        }
+        return true;
+    }
+
+    private int[] filterParallel(List<Object> values, int[] candidates, List<ColumnFilter> filters) {
+        final int count = candidates == null ? values.size() : candidates.length;
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int first = 0; first < count; first += CHUNK_SIZE)
+            chunks.add(new Chunk(values, candidates, first, Math.min(first + CHUNK_SIZE, count), filters));
+
+        final List<int[]> matches = SheetExecutor.invokeAll(chunks);
+        for (int i = 0; i < matches.size(); i++) {
+            // a path didn't resolve on some row, match the chunk here
+            if (matches.get(i) == null)
+                matches.set(i, filter(values, candidates, chunks.get(i).first, chunks.get(i).last, filters));
+        }
+
+        int size = 0;
+        for (final int[] chunk : matches)
+            size += chunk.length;
+        final int[] result = new int[size];
+        size = 0;
+        for (final int[] chunk : matches) {
+            System.arraycopy(chunk, 0, result, size, chunk.length);
+            size += chunk.length;
+        }
+        return result;
+    }
+
+    /**
+     * The filter value by column key.
+     */
+    private Map<String, String> getFilterValues() {
+        final Map<String, String> result = new HashMap<String, String>();
+        for (final ColumnFilter filter : filters)
+            result.put(filter.key, filter.filterValue);
+        return result;
+    }
+
+    /**
+     * The match mode by column key.
+     */
+    private Map<String, String> getMatchModes() {
+        final Map<String, String> result = new HashMap<String, String>();
+        for (final ColumnFilter filter : filters)
+            result.put(filter.key, filter.matchMode);
+        return result;
+    }
+
+    /**
+     * Gets the index of the column, building it if there is none for the
+     * current data.
+     */
+    private TrigramIndex getIndex(FilterCache cache, ColumnFilter filter, List<Object> values) {
+        final String key = filter.veFilterBy.getExpressionString();
+        TrigramIndex index = cache == null ? null : cache.getIndex(key);
+        if (index != null)
+            return index;
+
+        final String[] lowerValues = new String[values.size()];
+        try {
+            for (int i = 0; i < lowerValues.length; i++) {
+                final Object filterBy = sheet.getRowValue(context, filter.veFilterBy, values.get(i));
+                lowerValues[i] = filterBy == null ? null : filterBy.toString().toLowerCase();
+            }
+        } finally {
+            context.getExternalContext().getRequestMap().remove(sheet.getVar());
+        }
+        index = new TrigramIndex(lowerValues);
+        if (cache != null)
+            cache.putIndex(key, index);
+        return index;
+    }
+
+    /**
+     * Gets the filter cache of the view of the sheet, validated against the
+     * data: the data version, the row count and the row keys.
+     *
+     * @return the cache, or null if the rows have no verified key index to
+     * identify them
+     */
+    private FilterCache getFilterCache(List<Object> values) {
+        final RowKeyIndex rowKeys = sheet.getRowKeyIndex();
+        if (!sheet.isRowKeyIndexVerified(context) || rowKeys.size() != values.size())
+            return null;
+        final FilterCache cache = sheet.getFilterCache(context, true);
+        cache.validate(version + "|" + values.size() + "|" + rowKeys.getKeysHash());
+        return cache;
+    }
+
+    /**
+     * The filter of a single column.
+     */
+    private static class ColumnFilter {
+
+        /**
+         * Identifies the column across requests.
+         */
+        private final String key;
+
+        private final ValueExpression veFilterBy;
+
+        private final PropertyPath path;
+
+        /**
+         * The literal filterBy value, if there is no expression.
+         */
+        private final Object filterBy;
+
+        private final String matchMode;
+
+        private final String filterValue;
+
+        /**
+         * The filter value compiled for the match mode.
+         */
+        private final FilterPredicate predicate;
+
+        private final boolean indexed;
+
+        ColumnFilter(String key, ValueExpression veFilterBy, PropertyPath path, Object filterBy, String matchMode,
+                     String filterValue, boolean indexed) {
+            this.key = key;
+            this.veFilterBy = veFilterBy;
+            this.path = path;
+            this.filterBy = filterBy;
+            this.matchMode = matchMode;
+            this.filterValue = filterValue;
+            this.predicate = FilterPredicate.compile(matchMode, filterValue);
+            this.indexed = indexed;
+        }
+
+        boolean matches(Object filterBy) {
+            return predicate.matches(filterBy);
+        }
+    }
+
+    /**
+     * Matches a range of candidate rows through the property paths only.
+     */
+    private static class Chunk implements Callable<int[]> {
+
+        private final List<Object> values;
+
+        private final int[] candidates;
+
+        private final int first;
+
+        private final int last;
+
+        private final List<ColumnFilter> filters;
+
+        Chunk(List<Object> values, int[] candidates, int first, int last, List<ColumnFilter> filters) {
+            this.values = values;
+            this.candidates = candidates;
+            this.first = first;
+            this.last = last;
+            this.filters = filters;
+        }
+
+        /**
+         * @return the indexes of the matching rows, or null if the chunk must
+         * be matched on the request thread
+         */
+        public int[] call() {
+            final int[] result = new int[last - first];
+            int size = 0;
+            for (int i = first; i < last; i++) {
+                final int row = candidates == null ? i : candidates[i];
+                final Object value = values.get(row);
+                boolean matches = true;
+                for (final ColumnFilter filter : filters) {
+                    Object filterBy = filter.filterBy;
+                    if (filter.path != null) {
+                        filterBy = filter.path.getValue(value);
+                        if (filterBy == PropertyPath.UNRESOLVED)
+                            return null;
+                    }
+                    if (!filter.matches(filterBy)) {
+                        matches = false;
+                        break;
+                    }
+                }
+                if (matches)
+                    result[size++] = row;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.lassitercg.faces.components.sheet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Encodes the rowKey values of a sheet into the row key strings used to look
+ * up rows, in the rowKeys sent to the page and in the property names of cell
+ * errors. Encoded keys must be valid JavaScript identifiers. Two distinct key
+ * values with the same encoded key are reported as a collision when the rows
+ * are mapped, see {@link #isCollisionError()}.
+ * <p>
+ * Set a codec with the sheet <code>rowKeyCodec</code> attribute, either one of
+ * the built-in names or a subclass instance. An instance is kept in the
+ * component state, so subclasses must keep serializable fields only. Codecs
+ * are used from the worker threads of parallel encoding and must be thread
+ * safe.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public abstract class RowKeyCodec implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Encodes the string value of the key without whitespace, prefixed with
+     * <code>r_</code> (the default).
+     */
+    public static final String DEFAULT = "default";
+
+    /**
+     * Encodes integral numbers in base 36: <code>r</code> followed by the
+     * number, <code>n</code> for negative numbers. Distinct numbers never
+     * collide.
+     */
+    public static final String NUMERIC = "numeric";
+
+    /**
+     * Encodes a 63 bit hash of the string value of the key, or of the
+     * elements of an array key, in base 36 prefixed with <code>h</code>. Keeps
+     * long composite keys short.
+     */
+    public static final String HASHED = "hashed";
+
+    private static final RowKeyCodec DEFAULT_CODEC = new DefaultCodec();
+
+    private static final RowKeyCodec NUMERIC_CODEC = new NumericCodec();
+
+    private static final RowKeyCodec HASHED_CODEC = new HashedCodec();
+
+    /**
+     * Encodes the key.
+     *
+     * @param key the rowKey value, never null
+     * @return the row key string
+     * @throws IllegalArgumentException if the codec can't encode the key
+     */
+    public abstract String encode(Object key);
+
+    /**
+     * True if a collision fails mapping the rows, false if it's only logged
+     * and the key maps to the last of the rows.
+     *
+     * @return
+     */
+    public boolean isCollisionError() {
+        return true;
+    }
+
+    /**
+     * Finds distinct rowKey values with the same row key. Array values are
+     * compared by their elements.
+     *
+     * @param keys  the rowKey value of each row
+     * @param index the index of the encoded keys of the rows
+     * @return describes the first collision, or null if there is none
+     */
+    public static String findCollision(Object[] keys, RowKeyIndex index) {
+        if (index.keySet().size() == keys.length)
+            return null;
+        for (int i = 0; i < keys.length; i++) {
+            final int last = index.indexOf(index.getKey(i));
+            if (last != i && !Arrays.deepEquals(new Object[]{keys[i]}, new Object[]{keys[last]}))
+                return "Row keys " + keys[i] + " and " + keys[last] + " both encode to " + index.getKey(i);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the built-in codec with the name specified.
+     *
+     * @param name the name, null or empty for {@link #DEFAULT}
+     * @return the codec
+     * @throws IllegalArgumentException if there is no such codec
+     */
+    public static RowKeyCodec forName(String name) {
+        if (name == null || name.trim().isEmpty() || DEFAULT.equalsIgnoreCase(name.trim()))
+            return DEFAULT_CODEC;
+        if (NUMERIC.equalsIgnoreCase(name.trim()))
+            return NUMERIC_CODEC;
+        if (HASHED.equalsIgnoreCase(name.trim()))
+            return HASHED_CODEC;
+        throw new IllegalArgumentException("Invalid row key codec " + name);
+    }
+
+    private static class DefaultCodec extends RowKeyCodec {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String encode(Object key) {
+            return "r_".concat(StringUtils.deleteWhitespace(key.toString()));
+        }
+
+        /**
+         * Keys differing in whitespace only have always collided, keep
+         * mapping them as before.
+         */
+        @Override
+        public boolean isCollisionError() {
+            return false;
+        }
+    }
+
+    private static class NumericCodec extends RowKeyCodec {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String encode(Object key) {
+            final long value;
+            if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                value = ((Number) key).longValue();
+            } else if (key instanceof BigInteger && ((BigInteger) key).bitLength() < 64) {
+                value = ((BigInteger) key).longValue();
+            } else {
+                try {
+                    value = Long.parseLong(key.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Row key " + key + " is not an integral number");
+                }
+            }
+            // -(value + 1) can't overflow
+            return value >= 0 ? "r".concat(Long.toString(value, Character.MAX_RADIX))
+                    : "n".concat(Long.toString(-(value + 1), Character.MAX_RADIX));
+        }
+    }
+
+    private static class HashedCodec extends RowKeyCodec {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+        private static final long FNV_PRIME = 0x100000001B3L;
+
+        @Override
+        public String encode(Object key) {
+            final String value = key instanceof Object[] ? Arrays.deepToString((Object[]) key) : key.toString();
+            // 64 bit FNV-1a over the chars, finished with a mix step so
+            // short keys spread over all bits
+            long hash = FNV_OFFSET;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= FNV_PRIME;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            return "h".concat(Long.toString(hash & Long.MAX_VALUE, Character.MAX_RADIX));
+        }
+    }
+}
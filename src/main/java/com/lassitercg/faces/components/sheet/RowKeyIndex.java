@@ -0,0 +1,177 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Maps the row keys of a sheet to the index of their row in the source list.
+ * The keys are kept in an array by row index, and looked up through an open
+ * addressing hash table of row indexes, so there is no entry object or boxed
+ * index per row. Only the keys are serialized, the table is rebuilt on
+ * deserialization.
+ * <p>
+ * If several rows have the same key, the key maps to the last of them.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RowKeyIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] keys;
+
+    /**
+     * Row index + 1 by slot, 0 for an empty slot.
+     */
+    private transient int[] table;
+
+    private transient int distinct;
+
+    private transient int keysHash;
+
+    /**
+     * Indexes the row keys.
+     *
+     * @param keys the row key of each row of the source list
+     */
+    public RowKeyIndex(String[] keys) {
+        this.keys = keys;
+        buildTable();
+    }
+
+    /**
+     * The number of rows indexed.
+     *
+     * @return
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * The key of the row at the index specified.
+     *
+     * @param index the row index
+     * @return
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * A hash of all row keys in row order, so indexes of different rows
+     * rarely share it.
+     *
+     * @return
+     */
+    public int getKeysHash() {
+        return keysHash;
+    }
+
+    /**
+     * Finds the row with the key specified.
+     *
+     * @param key the row key
+     * @return the row index, or -1 if no row has the key
+     */
+    public int indexOf(String key) {
+        if (key == null)
+            return -1;
+        final int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int index = table[slot] - 1;
+            if (keys[index].equals(key))
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * The distinct row keys, as a set view.
+     *
+     * @return
+     */
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && indexOf((String) o) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return distinct;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        // skip keys repeated by a later row
+                        while (from < keys.length && indexOf(keys[from]) != from)
+                            from++;
+                        return from;
+                    }
+
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    public String next() {
+                        if (next >= keys.length)
+                            throw new NoSuchElementException();
+                        final String key = keys[next];
+                        next = advance(next + 1);
+                        return key;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private void buildTable() {
+        int capacity = 4;
+        while (capacity < keys.length * 2)
+            capacity <<= 1;
+        table = new int[capacity];
+        distinct = 0;
+        keysHash = Arrays.hashCode(keys);
+        final int mask = capacity - 1;
+        for (int index = 0; index < keys.length; index++) {
+            int slot = hash(keys[index]) & mask;
+            while (table[slot] != 0 && !keys[table[slot] - 1].equals(keys[index]))
+                slot = (slot + 1) & mask;
+            if (table[slot] == 0)
+                distinct++;
+            table[slot] = index + 1;
+        }
+    }
+
+    /**
+     * Spreads the string hash, the row keys often differ in their last
+     * characters only.
+     */
+    private static int hash(String key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildTable();
+    }
+}
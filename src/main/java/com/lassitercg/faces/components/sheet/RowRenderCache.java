@@ -0,0 +1,200 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of the encoded cell strings of each row, keyed by row key and
+ * validated against the row version supplied by the sheet's rowVersion
+ * expression. Cached rows are only valid for the signature they were encoded
+ * with (the rendered columns, the locale and the column converters); the whole
+ * cache is dropped when it changes.
+ * <p>
+ * The caches are kept in the session, not in the view state, for the most
+ * recently used sheets only, and each holds at most {@link #MAX_ROWS} rows.
+ * Rows beyond that are encoded on every render. All methods are synchronized,
+ * as requests of the same session may run concurrently.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RowRenderCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of rows cached per sheet.
+     */
+    public static final int MAX_ROWS = 10000;
+
+    /**
+     * The maximum number of sheets with a cache per session.
+     */
+    public static final int MAX_SHEETS = 8;
+
+    private static final String SESSION_KEY = RowRenderCache.class.getName();
+
+    private final int maxRows;
+
+    private String signature;
+
+    private final Map<String, CachedRow> rows = new HashMap<String, CachedRow>();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxRows the maximum number of rows cached
+     */
+    public RowRenderCache(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Gets the cache of the sheet from the session map.
+     *
+     * @param sessionMap the session map
+     * @param mutex      the lock of the session
+     * @param key        identifies the sheet, e.g. view id and client id
+     * @param create     true to create the cache if there is none
+     * @return the cache, or null if there is none and create is false
+     */
+    public static RowRenderCache forSheet(Map<String, Object> sessionMap, Object mutex, String key,
+                                          boolean create) {
+        final SessionLru<RowRenderCache> caches = SessionLru.get(sessionMap, mutex, SESSION_KEY, MAX_SHEETS,
+                create);
+        if (caches == null)
+            return null;
+        synchronized (caches) {
+            RowRenderCache cache = caches.get(key);
+            if (cache == null && create) {
+                cache = new RowRenderCache(MAX_ROWS);
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Describes a converter by its class and the values of its readable bean
+     * properties, so an equally configured converter restored in a later
+     * request has the same description. A converter whose properties can't
+     * be read is described by its identity, which never matches a restored
+     * one.
+     *
+     * @param converter the converter, or null
+     * @return the description
+     */
+    public static String describe(Object converter) {
+        if (converter == null)
+            return "-";
+        final StringBuilder sb = new StringBuilder(converter.getClass().getName());
+        try {
+            for (final PropertyDescriptor property : Introspector.getBeanInfo(converter.getClass(), Object.class)
+                    .getPropertyDescriptors()) {
+                final Method getter = property.getReadMethod();
+                if (getter == null)
+                    continue;
+                sb.append(';').append(property.getName()).append('=').append(getter.invoke(converter));
+            }
+        } catch (Exception e) {
+            return converter.getClass().getName() + '@' + System.identityHashCode(converter);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the cached cells of the row if they were cached for the version
+     * specified.
+     *
+     * @param rowKey  the row key
+     * @param version the current version of the row
+     * @return the cells, or null if not cached or stale
+     */
+    public synchronized String[] get(String rowKey, String version) {
+        final CachedRow row = rows.get(rowKey);
+        if (row == null || !row.version.equals(version))
+            return null;
+        return row.cells;
+    }
+
+    /**
+     * Caches the cells of the row, unless the cache is full and the row is
+     * not cached yet.
+     *
+     * @param rowKey  the row key
+     * @param version the version of the row the cells were encoded from
+     * @param cells   the encoded cells
+     */
+    public synchronized void put(String rowKey, String version, String[] cells) {
+        if (rows.size() < maxRows || rows.containsKey(rowKey))
+            rows.put(rowKey, new CachedRow(version, cells));
+    }
+
+    /**
+     * Removes the row from the cache.
+     *
+     * @param rowKey the row key
+     */
+    public synchronized void remove(String rowKey) {
+        rows.remove(rowKey);
+    }
+
+    /**
+     * Drops the rows that are no longer in the data.
+     *
+     * @param rowKeys the keys of all current rows
+     */
+    public synchronized void retain(Collection<String> rowKeys) {
+        rows.keySet().retainAll(rowKeys);
+    }
+
+    /**
+     * Drops all rows.
+     */
+    public synchronized void clear() {
+        rows.clear();
+    }
+
+    /**
+     * Clears the cache if the rows were cached with another signature.
+     *
+     * @param signature describes the rendered columns and everything else the
+     *                  encoded cells depend on
+     */
+    public synchronized void validate(String signature) {
+        if (!signature.equals(this.signature)) {
+            rows.clear();
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * The number of cached rows.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    /**
+     * The cells of a row and the version they were encoded from.
+     */
+    private static class CachedRow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String version;
+
+        private final String[] cells;
+
+        CachedRow(String version, String[] cells) {
+            this.version = version;
+            this.cells = cells;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.lassitercg.faces.components.sheet;
+
+import com.lassitercg.faces.components.util.PropertyPath;
+
+import javax.el.ValueExpression;
+import javax.faces.context.FacesContext;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Sorts the rows of a sheet by their sortBy value. The sort key of each row is
+ * evaluated once up front rather than twice per comparison, the keys are
+ * sorted along with their rows and the rows are written back in order.
+ * String keys are converted to collation keys once, so comparing them is a
+ * plain bitwise comparison instead of a collator run.
+ * <p>
+ * Keys compare as the PrimeFaces <code>BeanPropertyComparator</code> compared
+ * the rows before: strings case-insensitively using the collator of the
+ * locale, anything else by its natural order, a null key equal to any other
+ * key, and the result negated unless sorting ascending. Multiple criteria
+ * are compared in order, each breaking the ties of the previous ones. The
+ * sort is stable.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RowSorter {
+
+    /**
+     * Collator strength ignoring accents and case.
+     */
+    public static final String PRIMARY = "primary";
+
+    /**
+     * Collator strength ignoring case only.
+     */
+    public static final String SECONDARY = "secondary";
+
+    /**
+     * The default collator strength.
+     */
+    public static final String TERTIARY = "tertiary";
+
+    /**
+     * Collator strength telling apart all strings that aren't canonically
+     * equivalent.
+     */
+    public static final String IDENTICAL = "identical";
+
+    /**
+     * The number of rows per chunk when sorting in parallel.
+     */
+    public static final int CHUNK_SIZE = 5000;
+
+    /**
+     * Reads the sort keys of rows on demand.
+     */
+    public interface KeySource {
+
+        /**
+         * Reads the sort keys of the row.
+         *
+         * @param row the row index
+         * @return the keys, one per criterion, most significant first
+         */
+        Object[] getKeys(int row);
+    }
+
+    private final Locale locale;
+
+    private final Collator collator;
+
+    /**
+     * Creates a sorter comparing strings in the locale specified with the
+     * default collator strength.
+     *
+     * @param locale the locale
+     */
+    public RowSorter(Locale locale) {
+        this(locale, TERTIARY);
+    }
+
+    /**
+     * Creates a sorter comparing strings in the locale specified.
+     *
+     * @param locale   the locale
+     * @param strength the collator strength, one of {@link #PRIMARY},
+     *                 {@link #SECONDARY}, {@link #TERTIARY} or
+     *                 {@link #IDENTICAL}
+     * @throws IllegalArgumentException if the strength is none of these
+     */
+    public RowSorter(Locale locale, String strength) {
+        this.locale = locale;
+        this.collator = Collator.getInstance(locale);
+        this.collator.setStrength(toCollatorStrength(strength));
+    }
+
+    /**
+     * Converts the strength name to the {@link Collator} constant.
+     */
+    private static int toCollatorStrength(String strength) {
+        if (PRIMARY.equalsIgnoreCase(strength))
+            return Collator.PRIMARY;
+        if (SECONDARY.equalsIgnoreCase(strength))
+            return Collator.SECONDARY;
+        if (TERTIARY.equalsIgnoreCase(strength))
+            return Collator.TERTIARY;
+        if (IDENTICAL.equalsIgnoreCase(strength))
+            return Collator.IDENTICAL;
+        throw new IllegalArgumentException("Invalid sort collator strength " + strength);
+    }
+
+    /**
+     * Sorts row indexes in place by the rows they refer to, by each of the
+     * criteria in turn. The keys of all criteria are evaluated in a single
+     * pass and the rows sorted once by the composite key; a criterion only
+     * decides the order of rows that all previous criteria consider equal.
+     * <p>
+     * When parallel, the keys are extracted in chunks on the
+     * {@link SheetExecutor} if all sortBy expressions are plain property
+     * paths resolving to non-null keys on every row, and the rows sorted as
+     * by {@link #sort(int[], Object[][], boolean[], boolean)}.
+     *
+     * @param context  the faces context
+     * @param sheet    the sheet
+     * @param source   the rows the indexes refer to
+     * @param rows     the indexes of the rows to sort
+     * @param criteria the sort criteria, most significant first
+     * @param parallel true to sort on multiple threads if possible
+     * @return true if none of the keys was null, so the order is total and
+     * rows can be inserted later with
+     * {@link #getInsertionPoint(int[], int, int, boolean[], KeySource)}
+     */
+    public boolean sort(FacesContext context, Sheet sheet, List<Object> source, int[] rows,
+                        List<SortCriterion> criteria, boolean parallel) {
+        final ValueExpression[] sortBy = getSortBy(criteria);
+
+        Object[][] keys = null;
+        if (parallel && rows.length > CHUNK_SIZE)
+            keys = getKeysParallel(sheet, source, rows, sortBy);
+        if (keys == null) {
+            keys = new Object[rows.length][];
+            try {
+                for (int i = 0; i < rows.length; i++)
+                    keys[i] = getKeys(context, sheet, source.get(rows[i]), sortBy);
+            } finally {
+                context.getExternalContext().getRequestMap().remove(sheet.getVar());
+            }
+        }
+        sort(rows, keys, getAscending(criteria), parallel);
+        return !hasNullKeys(keys);
+    }
+
+    /**
+     * Sorts row indexes in place by sort keys already evaluated. When
+     * parallel and none of the keys is null, which makes their order total,
+     * the collation keys are computed and the rows merge sorted in chunks on
+     * the {@link SheetExecutor}; as the merge sort is stable, the result is
+     * identical to the sequential sort.
+     *
+     * @param rows      the indexes of the rows to sort
+     * @param keys      the sort keys of each of the rows, one per criterion,
+     *                  most significant first
+     * @param ascending per criterion, true if sorting ascending
+     * @param parallel  true to sort on multiple threads if possible
+     */
+    public void sort(int[] rows, Object[][] keys, boolean[] ascending, boolean parallel) {
+        final SortEntryComparator comparator = new SortEntryComparator(ascending);
+        SortEntry[] entries = null;
+        if (parallel && rows.length > CHUNK_SIZE && !hasNullKeys(keys))
+            entries = getEntriesParallel(rows, keys);
+
+        if (entries != null) {
+            sortParallel(entries, comparator);
+        } else {
+            entries = new SortEntry[rows.length];
+            for (int i = 0; i < entries.length; i++)
+                entries[i] = new SortEntry(rows[i], keys[i], collator);
+            Arrays.sort(entries, comparator);
+        }
+
+        for (int i = 0; i < entries.length; i++)
+            rows[i] = entries[i].index;
+    }
+
+    /**
+     * Finds the position of a row among rows sorted by
+     * {@link #sort(int[], Object[][], boolean[], boolean)} from ascending row
+     * indexes, where that sort would place it: rows comparing equal stay in
+     * the order of their index, as the sort is stable. The keys are only read
+     * for the rows the binary search visits.
+     *
+     * @param rows      the sorted row indexes
+     * @param size      the number of sorted rows in the array
+     * @param row       the index of the row to insert
+     * @param ascending per criterion, true if sorting ascending
+     * @param keys      reads the sort keys of the rows
+     * @return the position the row belongs at, or -1 if a key of the row or
+     * of a row visited is null, so the order isn't total and the rows must be
+     * sorted again
+     */
+    public int getInsertionPoint(int[] rows, int size, int row, boolean[] ascending, KeySource keys) {
+        final SortEntryComparator comparator = new SortEntryComparator(ascending);
+        final Object[] rowKeys = keys.getKeys(row);
+        if (hasNullKeys(new Object[][]{rowKeys}))
+            return -1;
+        final SortEntry entry = new SortEntry(row, rowKeys, collator);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final Object[] visitedKeys = keys.getKeys(rows[middle]);
+            if (hasNullKeys(new Object[][]{visitedKeys}))
+                return -1;
+            final SortEntry visited = new SortEntry(rows[middle], visitedKeys, collator);
+            int result = comparator.compare(visited, entry);
+            if (result == 0)
+                result = visited.index < entry.index ? -1 : 1;
+            if (result < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Reads the sort keys of the source rows of the sheet, for
+     * {@link #getInsertionPoint(int[], int, int, boolean[], KeySource)}. May
+     * put the row var in the request map.
+     *
+     * @param context  the faces context
+     * @param sheet    the sheet
+     * @param source   the source rows
+     * @param criteria the sort criteria, most significant first
+     * @return the key source
+     */
+    public KeySource getKeySource(final FacesContext context, final Sheet sheet, final List<Object> source,
+                                  List<SortCriterion> criteria) {
+        final ValueExpression[] sortBy = getSortBy(criteria);
+        return new KeySource() {
+            public Object[] getKeys(int row) {
+                return RowSorter.getKeys(context, sheet, source.get(row), sortBy);
+            }
+        };
+    }
+
+    private static ValueExpression[] getSortBy(List<SortCriterion> criteria) {
+        final ValueExpression[] result = new ValueExpression[criteria.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = criteria.get(i).getSortBy();
+        return result;
+    }
+
+    /**
+     * The sort direction of each criterion.
+     *
+     * @param criteria the sort criteria
+     * @return per criterion, true if sorting ascending
+     */
+    public static boolean[] getAscending(List<SortCriterion> criteria) {
+        final boolean[] result = new boolean[criteria.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = criteria.get(i).isAscending();
+        return result;
+    }
+
+    /**
+     * Evaluates the sort keys of the row, may put the row var in the request
+     * map.
+     */
+    private static Object[] getKeys(FacesContext context, Sheet sheet, Object row, ValueExpression[] sortBy) {
+        final Object[] keys = new Object[sortBy.length];
+        for (int level = 0; level < sortBy.length; level++)
+            keys[level] = sheet.getRowValue(context, sortBy[level], row);
+        return keys;
+    }
+
+    private static boolean hasNullKeys(Object[][] keys) {
+        for (Object[] rowKeys : keys) {
+            for (Object key : rowKeys) {
+                if (key == null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the sort keys in chunks on the executor.
+     *
+     * @return the keys, or null if some key is not a non-null property path
+     * value
+     */
+    private Object[][] getKeysParallel(Sheet sheet, final List<Object> source, final int[] rows,
+                                       ValueExpression[] sortBy) {
+        final PropertyPath[] paths = new PropertyPath[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            paths[i] = sortBy[i].isLiteralText() ? null : sheet.getPropertyPath(sortBy[i]);
+            if (paths[i] == null)
+                return null;
+        }
+
+        final Object[][] keys = new Object[rows.length][];
+        final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (int first = 0; first < keys.length; first += CHUNK_SIZE) {
+            final int from = first;
+            final int to = Math.min(first + CHUNK_SIZE, keys.length);
+            tasks.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    for (int i = from; i < to; i++) {
+                        final Object row = source.get(rows[i]);
+                        final Object[] rowKeys = new Object[paths.length];
+                        for (int level = 0; level < paths.length; level++) {
+                            rowKeys[level] = paths[level].getValue(row);
+                            if (rowKeys[level] == null || rowKeys[level] == PropertyPath.UNRESOLVED)
+                                return Boolean.FALSE;
+                        }
+                        keys[i] = rowKeys;
+                    }
+                    return Boolean.TRUE;
+                }
+            });
+        }
+        for (Boolean complete : SheetExecutor.invokeAll(tasks)) {
+            if (!complete)
+                return null;
+        }
+        return keys;
+    }
+
+    /**
+     * Creates the entries, with the collation keys of their strings, in
+     * chunks on the executor.
+     */
+    private SortEntry[] getEntriesParallel(final int[] rows, final Object[][] keys) {
+        final SortEntry[] entries = new SortEntry[rows.length];
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int first = 0; first < entries.length; first += CHUNK_SIZE) {
+            final int from = first;
+            final int to = Math.min(first + CHUNK_SIZE, entries.length);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    // the collator is synchronized, each chunk uses its own
+                    final Collator chunkCollator = (Collator) collator.clone();
+                    for (int i = from; i < to; i++)
+                        entries[i] = new SortEntry(rows[i], keys[i], chunkCollator);
+                    return null;
+                }
+            });
+        }
+        SheetExecutor.invokeAll(tasks);
+        return entries;
+    }
+
+    /**
+     * Stable merge sort of the entries: chunks are sorted on the executor,
+     * then adjacent runs merged pairwise, each merge on the executor.
+     */
+    private void sortParallel(final SortEntry[] entries, final SortEntryComparator comparator) {
+        final int length = entries.length;
+        final List<Callable<Void>> sorts = new ArrayList<Callable<Void>>();
+        for (int first = 0; first < length; first += CHUNK_SIZE) {
+            final int from = first;
+            final int to = Math.min(first + CHUNK_SIZE, length);
+            sorts.add(new Callable<Void>() {
+                public Void call() {
+                    Arrays.sort(entries, from, to, comparator);
+                    return null;
+                }
+            });
+        }
+        SheetExecutor.invokeAll(sorts);
+
+        SortEntry[] source = entries;
+        SortEntry[] target = new SortEntry[length];
+        for (int width = CHUNK_SIZE; width < length; width *= 2) {
+            final List<Callable<Void>> merges = new ArrayList<Callable<Void>>();
+            for (int first = 0; first < length; first += 2 * width) {
+                final SortEntry[] from = source;
+                final SortEntry[] to = target;
+                final int low = first;
+                final int middle = Math.min(first + width, length);
+                final int high = Math.min(first + 2 * width, length);
+                merges.add(new Callable<Void>() {
+                    public Void call() {
+                        merge(from, to, low, middle, high, comparator);
+                        return null;
+                    }
+                });
+            }
+            SheetExecutor.invokeAll(merges);
+            final SortEntry[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != entries)
+            System.arraycopy(source, 0, entries, 0, length);
+    }
+
+    /**
+     * Merges the sorted runs [low, middle) and [middle, high) of the source
+     * into the target, taking from the left run on ties to keep it stable.
+     */
+    private static void merge(SortEntry[] source, SortEntry[] target, int low, int middle, int high,
+                              SortEntryComparator comparator) {
+        int left = low;
+        int right = middle;
+        for (int i = low; i < high; i++) {
+            if (right >= high || (left < middle && comparator.compare(source[left], source[right]) <= 0))
+                target[i] = source[left++];
+            else
+                target[i] = source[right++];
+        }
+    }
+
+    /**
+     * The index of a row and its sort keys.
+     */
+    private class SortEntry {
+
+        private final int index;
+
+        private final Object[] keys;
+
+        /**
+         * The collation keys of the keys in lower case, null where the key is
+         * not a string.
+         */
+        private final CollationKey[] collationKeys;
+
+        SortEntry(int index, Object[] keys, Collator collator) {
+            this.index = index;
+            this.keys = keys;
+            this.collationKeys = new CollationKey[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] instanceof String)
+                    collationKeys[i] = collator.getCollationKey(((String) keys[i]).toLowerCase(locale));
+            }
+        }
+    }
+
+    /**
+     * Compares the entries by their keys, level by level.
+     */
+    private class SortEntryComparator implements Comparator<SortEntry> {
+
+        private final boolean[] ascending;
+
+        SortEntryComparator(boolean[] ascending) {
+            this.ascending = ascending;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public int compare(SortEntry a, SortEntry b) {
+            for (int i = 0; i < ascending.length; i++) {
+                final Object keyA = a.keys[i];
+                final Object keyB = b.keys[i];
+                if (keyA == null || keyB == null)
+                    continue;
+                final int result;
+                if (a.collationKeys[i] != null && b.collationKeys[i] != null)
+                    result = a.collationKeys[i].compareTo(b.collationKeys[i]);
+                else
+                    result = ((Comparable) keyA).compareTo(keyB);
+                if (result != 0)
+                    return ascending[i] ? result : -1 * result;
+            }
+            return 0;
+        }
+    }
+}
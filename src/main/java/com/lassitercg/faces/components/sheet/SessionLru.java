@@ -0,0 +1,75 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map held in a session attribute that drops its least recently used
+ * entries beyond a maximum size. The map is created under the lock of its
+ * session, so concurrent requests of a session share one map while requests
+ * of other sessions don't wait for each other. Access to the entries must be
+ * synchronized on the map.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class SessionLru<V> extends LinkedHashMap<String, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param maxSize the maximum number of entries held
+     */
+    public SessionLru(int maxSize) {
+        super(16, 0.75f, true);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the map held in the session under the name specified.
+     *
+     * @param sessionMap the session map
+     * @param mutex      the lock of the session, see
+     *                   {@link Sheet#getSessionMutex(javax.faces.context.FacesContext)}
+     * @param name       the session attribute name
+     * @param maxSize    the maximum number of entries of a created map
+     * @param create     true to create the map if there is none
+     * @return the map, or null if there is none and create is false
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> SessionLru<V> get(Map<String, Object> sessionMap, Object mutex, String name, int maxSize,
+                                        boolean create) {
+        final SessionLru<V> map = (SessionLru<V>) sessionMap.get(name);
+        if (map != null || !create)
+            return map;
+        return (SessionLru<V>) putIfAbsent(sessionMap, mutex, name, new SessionLru<V>(maxSize));
+    }
+
+    /**
+     * Holds the value in the session under the name specified unless the
+     * session already holds one, locking on the session.
+     *
+     * @param sessionMap the session map
+     * @param mutex      the lock of the session
+     * @param name       the session attribute name
+     * @param value      the value to hold
+     * @return the value held
+     */
+    public static Object putIfAbsent(Map<String, Object> sessionMap, Object mutex, String name, Object value) {
+        synchronized (mutex) {
+            final Object held = sessionMap.get(name);
+            if (held != null)
+                return held;
+            sessionMap.put(name, value);
+            return value;
+        }
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxSize;
+    }
+}
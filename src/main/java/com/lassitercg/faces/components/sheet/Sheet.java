@@ -22,22 +22,23 @@
  */
 package com.lassitercg.faces.components.sheet;
 
-import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.UUID;
 
-import javax.el.ELContext;
 import javax.el.ValueExpression;
+import javax.faces.FacesException;
 import javax.faces.application.FacesMessage;
 import javax.faces.application.ResourceDependencies;
 import javax.faces.application.ResourceDependency;
@@ -51,16 +52,16 @@ import javax.faces.context.FacesContext;
 import javax.faces.convert.Converter;
 import javax.faces.convert.ConverterException;
 
+import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.primefaces.component.api.Widget;
 import org.primefaces.context.RequestContext;
-import org.primefaces.model.BeanPropertyComparator;
 import org.primefaces.model.SortOrder;
-import org.primefaces.util.ComponentUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.lassitercg.faces.components.event.SheetUpdate;
+import com.lassitercg.faces.components.util.PropertyPath;
 import com.lassitercg.faces.components.util.VarBuilder;
 
 /**
@@ -90,6 +91,11 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	public static final String RENDERERTYPE = "com.lassitercg.faces.components.sheet";
 	public static final String COMPONENTTYPE = "com.lassitercg.faces.components.sheet";
 
+	/**
+	 * Logger for this class
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(Sheet.class);
+
 	/**
 	 * Properties that are tracked by state saving.
 	 */
@@ -217,9 +223,133 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		/**
 		 * The message displayed when no records are found
 		 */
-		emptyMessage
+		emptyMessage,
+
+		/**
+		 * Flag indicating whether rows are sent to the client in blocks on
+		 * demand instead of all at once
+		 */
+		lazy,
+
+		/**
+		 * The number of rows sent to the client per block when lazy
+		 */
+		lazyBlockSize,
+
+		/**
+		 * The wire format of the row data, rows or columnar
+		 */
+		dataFormat,
+
+		/**
+		 * Flag indicating whether large sheets encode their rows on multiple
+		 * threads
+		 */
+		parallelEncoding,
+
+		/**
+		 * The version of each row (EL expression), enables the row cache
+		 */
+		rowVersion,
+
+		/**
+		 * Flag indicating whether the rows are fetched from the sheet data
+		 * resource instead of being inlined in the page
+		 */
+		remoteData,
+
+		/**
+		 * The version of the sheet data as a whole, used for the data ETag
+		 */
+		dataVersion,
+
+		/**
+		 * The locale used to compare string sort values
+		 */
+		sortLocale,
+
+		/**
+		 * The collator strength used to compare string sort values
+		 */
+		sortCollatorStrength,
+
+		/**
+		 * The sort criteria following sortBy when sorting by multiple columns
+		 */
+		secondarySort,
+
+		/**
+		 * The row count from which rows are filtered and sorted on multiple
+		 * threads
+		 */
+		parallelThreshold,
+
+		/**
+		 * Flag indicating whether the sorted and filtered view is left out of
+		 * the saved state and rebuilt from the value instead
+		 */
+		lightweightState,
+
+		/**
+		 * The codec encoding rowKey values into row key strings
+		 */
+		rowKeyCodec,
+
+		/**
+		 * Flag indicating whether plain property paths are read from the rows
+		 * directly instead of through EL
+		 */
+		directPropertyAccess,
+
+		/**
+		 * Identifies this instance of the sheet across the requests of its
+		 * view, so views of the same page keep their own session caches
+		 */
+		instanceId
 	}
 
+	/**
+	 * Data format sending the data as an array of row arrays.
+	 */
+	public static final String DATA_FORMAT_ROWS = "rows";
+
+	/**
+	 * Data format sending the data as column arrays, with repetitive columns
+	 * dictionary encoded.
+	 */
+	public static final String DATA_FORMAT_COLUMNAR = "columnar";
+
+	/**
+	 * Request attribute suffix of the rows of the value of the current
+	 * request, as a random access list.
+	 */
+	private static final String SOURCE_ROWS = "_sourceRows";
+
+	/**
+	 * Request attribute suffix set once the row key index was built or
+	 * checked against the source rows, after which rows are looked up without
+	 * checking their key.
+	 */
+	private static final String ROW_KEYS_VERIFIED = "_rowKeysVerified";
+
+	/**
+	 * Request attribute suffix of the view key without data version the view
+	 * was updated for, when there is no data version: the updated view is
+	 * reused for the render of that request only.
+	 */
+	private static final String UPDATED_VIEW = "_updatedView";
+
+	/**
+	 * Default number of rows per block when lazy loading rows.
+	 */
+	public static final int DEFAULT_LAZY_BLOCK_SIZE = 200;
+
+	/**
+	 * The most changed rows moved within the sorted and filtered view after
+	 * an update, more rows are sorted and filtered again from scratch.
+	 */
+	private static final int MAX_INCREMENTAL_ROWS = 256;
+
 	/**
 	 * The list of UI Columns
 	 */
@@ -231,19 +361,21 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	private List<BadUpdate> badUpdates;
 
 	/**
-	 * The sorted list of data
+	 * The sorted and filtered view of the data, as the indexes of the rows in
+	 * the source list. Held in the session with a data version, see
+	 * {@link ViewCache}, saved in the component state of lazy sheets without.
 	 */
-	private List<Object> sortedList;
+	private int[] sortedRows;
 
 	/**
 	 * Map of submitted values by row index and column index
 	 */
-	private Map<RowColIndex, String> submittedValues = new HashMap<RowColIndex, String>();
+	private CellMap<String> submittedValues = new CellMap<String>();
 
 	/**
 	 * Map of local values by row index and column index
 	 */
-	private Map<RowColIndex, Object> localValues = new HashMap<RowColIndex, Object>();
+	private CellMap<Object> localValues = new CellMap<Object>();
 
 	/**
 	 * The selection data
@@ -264,14 +396,47 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	/**
 	 * Maps a visible, rendered column index to the actual column based on
 	 * whether or not the column is rendered. Updated on encode, and used on
-	 * decode. Saved in the component state.
+	 * decode. Saved in the component state if a column has a rendered
+	 * expression.
+	 */
+	private int[] columnMapping;
+
+	/**
+	 * Cache of the encoded cells by row key, used when a rowVersion
+	 * expression is set. Kept in the session, see {@link RowRenderCache}.
+	 */
+	private transient RowRenderCache rowCache;
+
+	/**
+	 * The render plan the row cache was validated for.
+	 */
+	private transient RenderPlan rowCachePlan;
+
+	/**
+	 * Identifies the data version, sort and filters the sorted rows and row
+	 * key index were built for, null if they must be rebuilt on the next
+	 * render.
+	 */
+	private String viewKey;
+
+	/**
+	 * True if some sort key of the sorted rows was null, so their order isn't
+	 * total and changed rows can't be moved to their sorted position. Saved
+	 * with the sorted rows.
+	 */
+	private boolean sortedWithNullKeys;
+
+	/**
+	 * Index of the row keys of the source list. Kept along with the sorted
+	 * rows.
 	 */
-	private Map<Integer, Integer> columnMapping;
+	private RowKeyIndex rowKeyIndex;
 
 	/**
-	 * Map by row keys for values found in list
+	 * Compiled property paths of the value expressions used per row, null
+	 * for expressions that aren't plain property paths on the row var.
 	 */
-	private Map<String, Object> rowMap;
+	private transient Map<ValueExpression, PropertyPath> propertyPaths;
 
 	@Override
 	public String getFamily() {
@@ -463,6 +628,304 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.showRowHeaders, true).toString());
 	}
 
+	/**
+	 * Updates the lazy flag.
+	 *
+	 * @param value
+	 */
+	public void setLazy(Boolean value) {
+		getStateHelper().put(PropertyKeys.lazy, value);
+	}
+
+	/**
+	 * Flag indicating whether or not rows are loaded by the client in blocks
+	 * as it scrolls. When true, only the first block of rows and the total row
+	 * count are rendered with the page. The sorted and filtered view is saved
+	 * with the state (unless lightweight) and the blocks are taken from it,
+	 * so block requests read the value but don't sort and filter it again.
+	 *
+	 * @return
+	 */
+	public Boolean isLazy() {
+		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.lazy, false).toString());
+	}
+
+	/**
+	 * Updates the lazy block size.
+	 *
+	 * @param value
+	 */
+	public void setLazyBlockSize(Integer value) {
+		getStateHelper().put(PropertyKeys.lazyBlockSize, value);
+	}
+
+	/**
+	 * The number of rows sent to the client per block when lazy.
+	 *
+	 * @return
+	 */
+	public Integer getLazyBlockSize() {
+		final Object result = getStateHelper().eval(PropertyKeys.lazyBlockSize, DEFAULT_LAZY_BLOCK_SIZE);
+		final int size = Integer.valueOf(result.toString());
+		return size > 0 ? size : DEFAULT_LAZY_BLOCK_SIZE;
+	}
+
+	/**
+	 * Updates the data format.
+	 *
+	 * @param value
+	 */
+	public void setDataFormat(String value) {
+		getStateHelper().put(PropertyKeys.dataFormat, value);
+	}
+
+	/**
+	 * The wire format used to send the row data to the client, either
+	 * {@link #DATA_FORMAT_ROWS} (the default) or {@link #DATA_FORMAT_COLUMNAR}.
+	 *
+	 * @return the data format
+	 */
+	public String getDataFormat() {
+		return getStateHelper().eval(PropertyKeys.dataFormat, DATA_FORMAT_ROWS).toString();
+	}
+
+	/**
+	 * Updates the parallel encoding flag.
+	 *
+	 * @param value
+	 */
+	public void setParallelEncoding(Boolean value) {
+		getStateHelper().put(PropertyKeys.parallelEncoding, value);
+	}
+
+	/**
+	 * Flag indicating whether or not the rows of large sheets are encoded in
+	 * chunks on multiple threads. Only used when the row key and the values of
+	 * all rendered columns are plain property paths on the row var; column
+	 * converters must be thread safe.
+	 *
+	 * @return
+	 */
+	public Boolean isParallelEncoding() {
+		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.parallelEncoding, false).toString());
+	}
+
+	/**
+	 * Updates the parallel threshold.
+	 *
+	 * @param value
+	 */
+	public void setParallelThreshold(Integer value) {
+		getStateHelper().put(PropertyKeys.parallelThreshold, value);
+	}
+
+	/**
+	 * The row count from which the rows are filtered and sorted on multiple
+	 * threads, 0 (the default) to always filter and sort on the request
+	 * thread. Only filterBy and sortBy expressions that are plain property
+	 * paths on the row var are evaluated in parallel; the result is the same
+	 * either way.
+	 *
+	 * @return
+	 */
+	public Integer getParallelThreshold() {
+		return Integer.valueOf(getStateHelper().eval(PropertyKeys.parallelThreshold, 0).toString());
+	}
+
+	/**
+	 * Updates the row key codec.
+	 *
+	 * @param value
+	 *            a {@link RowKeyCodec} or the name of a built-in codec
+	 */
+	public void setRowKeyCodec(Object value) {
+		getStateHelper().put(PropertyKeys.rowKeyCodec, value);
+	}
+
+	/**
+	 * The codec encoding rowKey values into row key strings, given as a
+	 * {@link RowKeyCodec} or the name of a built-in codec: default, numeric
+	 * or hashed. Resolved once per request by the render plan.
+	 *
+	 * @return
+	 */
+	public RowKeyCodec getRowKeyCodec() {
+		final Object value = getStateHelper().eval(PropertyKeys.rowKeyCodec);
+		if (value instanceof RowKeyCodec) {
+			return (RowKeyCodec) value;
+		}
+		return RowKeyCodec.forName(value == null ? null : value.toString());
+	}
+
+	/**
+	 * Updates the lightweight state flag.
+	 *
+	 * @param value
+	 */
+	public void setLightweightState(Boolean value) {
+		getStateHelper().put(PropertyKeys.lightweightState, value);
+	}
+
+	/**
+	 * Flag indicating whether or not the sorted and filtered view of a lazy
+	 * sheet without a data version is left out of the saved state and rebuilt
+	 * from the value when next needed. Views of sheets with a data version
+	 * are never saved in the state.
+	 *
+	 * @return
+	 */
+	public Boolean isLightweightState() {
+		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.lightweightState, false).toString());
+	}
+
+	/**
+	 * Updates the direct property access flag.
+	 *
+	 * @param value
+	 */
+	public void setDirectPropertyAccess(Boolean value) {
+		getStateHelper().put(PropertyKeys.directPropertyAccess, value);
+	}
+
+	/**
+	 * Flag indicating whether or not per row expressions that are plain
+	 * property paths on the row var (e.g. #{row.account.name}) are read and
+	 * written on the row objects directly, bypassing the EL resolver chain.
+	 * Each path is checked against its expression on the first row, and the
+	 * expression used if they differ, e.g. because a custom EL resolver
+	 * handles the row objects. Set to false if such a resolver can't be
+	 * detected that way. Defaults to true.
+	 *
+	 * @return
+	 */
+	public Boolean isDirectPropertyAccess() {
+		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.directPropertyAccess, true).toString());
+	}
+
+	/**
+	 * Updates the remote data flag.
+	 *
+	 * @param value
+	 */
+	public void setRemoteData(Boolean value) {
+		getStateHelper().put(PropertyKeys.remoteData, value);
+	}
+
+	/**
+	 * Flag indicating whether or not the rows are served by the sheet data
+	 * resource (see {@link SheetResourceHandler}) instead of being inlined in
+	 * the widget script. Ignored for lazy sheets.
+	 *
+	 * @return
+	 */
+	public Boolean isRemoteData() {
+		return Boolean.valueOf(getStateHelper().eval(PropertyKeys.remoteData, false).toString());
+	}
+
+	/**
+	 * Updates the data version.
+	 *
+	 * @param value
+	 */
+	public void setDataVersion(Object value) {
+		getStateHelper().put(PropertyKeys.dataVersion, value);
+	}
+
+	/**
+	 * The version of the sheet data, e.g. a counter or timestamp changed
+	 * whenever the underlying data changes. The sorted and filtered view is
+	 * reused across requests while the version, sort and filters are
+	 * unchanged, and with remote data the encoded rows are reused and
+	 * revalidated by this version instead of re-encoded.
+	 *
+	 * @return the version or null if not set
+	 */
+	public Object getDataVersion() {
+		return getStateHelper().eval(PropertyKeys.dataVersion);
+	}
+
+	/**
+	 * Updates the sort locale.
+	 *
+	 * @param value
+	 */
+	public void setSortLocale(Object value) {
+		getStateHelper().put(PropertyKeys.sortLocale, value);
+	}
+
+	/**
+	 * The locale used to compare string sort values, either a
+	 * {@link Locale} or a string such as <code>de_DE</code> or
+	 * <code>sv-SE</code>. Defaults to English.
+	 *
+	 * @return the locale
+	 */
+	public Locale getSortLocale() {
+		final Object value = getStateHelper().eval(PropertyKeys.sortLocale);
+		if (value == null) {
+			return Locale.ENGLISH;
+		} else if (value instanceof Locale) {
+			return (Locale) value;
+		} else {
+			final String locale = value.toString().trim();
+			return locale.isEmpty() ? Locale.ENGLISH : LocaleUtils.toLocale(locale.replace('-', '_'));
+		}
+	}
+
+	/**
+	 * Updates the sort collator strength.
+	 *
+	 * @param value
+	 */
+	public void setSortCollatorStrength(String value) {
+		getStateHelper().put(PropertyKeys.sortCollatorStrength, value);
+	}
+
+	/**
+	 * The strength of the collator used to compare string sort values, one of
+	 * primary, secondary, tertiary (the default) or identical. String values
+	 * are always compared case-insensitively.
+	 *
+	 * @return the strength
+	 */
+	public String getSortCollatorStrength() {
+		return getStateHelper().eval(PropertyKeys.sortCollatorStrength, RowSorter.TERTIARY).toString();
+	}
+
+	/**
+	 * True if there are submitted or local values not yet applied to the
+	 * model.
+	 *
+	 * @return
+	 */
+	public boolean hasPendingValues() {
+		return !submittedValues.isEmpty() || !localValues.isEmpty();
+	}
+
+	/**
+	 * Returns the first row of the block requested by the client if the
+	 * current request is a lazy row fetch for this sheet, otherwise -1.
+	 *
+	 * @param context
+	 *            the FacesContext
+	 * @return the first row requested or -1
+	 */
+	public int getLazyFetchFirst(FacesContext context) {
+		if (!isLazy() || !context.getPartialViewContext().isAjaxRequest()) {
+			return -1;
+		}
+		final String first = context.getExternalContext().getRequestParameterMap()
+				.get(getClientId(context) + "_lazyfirst");
+		if (first == null) {
+			return -1;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(first));
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	/**
 	 * The list of child columns.
 	 *
@@ -573,6 +1036,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		if (origSortOrder != null) {
 			setSortOrder(origSortOrder);
 		}
+		setSecondarySort(null);
 	}
 
 	/**
@@ -589,6 +1053,8 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		resetSubmitted();
 		resetSort();
 		resetBadUpdates();
+		resetRowCache();
+		viewKey = null;
 		localValues.clear();
 		for (final Column c : getColumns()) {
 			c.setFilterValue(null);
@@ -603,7 +1069,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @param value
 	 */
 	public void setSubmittedValue(FacesContext context, String rowKey, int col, String value) {
-		submittedValues.put(new RowColIndex(rowKey, col), value);
+		submittedValues.put(rowKey, col, value);
 	}
 
 	/**
@@ -614,7 +1080,19 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	public String getSubmittedValue(String rowKey, int col) {
-		return submittedValues.get(new RowColIndex(rowKey, col));
+		return submittedValues.get(rowKey, col);
+	}
+
+	/**
+	 * True if there is a submitted value for the row and col. The submitted
+	 * value itself may be null.
+	 *
+	 * @param rowKey
+	 * @param col
+	 * @return
+	 */
+	public boolean hasSubmittedValue(String rowKey, int col) {
+		return submittedValues.containsKey(rowKey, col);
 	}
 
 	/**
@@ -625,7 +1103,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @param value
 	 */
 	public void setLocalValue(String rowKey, int col, Object value) {
-		localValues.put(new RowColIndex(rowKey, col), value);
+		localValues.put(rowKey, col, value);
 	}
 
 	/**
@@ -636,7 +1114,19 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	public Object getLocalValue(String rowKey, int col) {
-		return localValues.get(new RowColIndex(rowKey, col));
+		return localValues.get(rowKey, col);
+	}
+
+	/**
+	 * True if there is a local value for the row and col. The local value
+	 * itself may be null.
+	 *
+	 * @param rowKey
+	 * @param col
+	 * @return
+	 */
+	public boolean hasLocalValue(String rowKey, int col) {
+		return localValues.containsKey(rowKey, col);
 	}
 
 	/**
@@ -659,63 +1149,448 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		if (rowKey == null) {
 			context.getExternalContext().getRequestMap().remove(getVar());
 		} else {
-			final Object value = rowMap.get(rowKey);
+			final Object value = getRowData(context, rowKey);
 			context.getExternalContext().getRequestMap().put(getVar(), value);
 		}
 	}
 
 	/**
-	 * Gets the object value of the row and col specified. If a local value
-	 * exists, that is returned, otherwise the actual value is return.
+	 * Gets the row object for the row key specified.
+	 *
+	 * @param rowKey
+	 *            the rowKey string
+	 * @return the row object or null if there is no such row
+	 */
+	public Object getRowData(String rowKey) {
+		return getRowData(FacesContext.getCurrentInstance(), rowKey);
+	}
+
+	/**
+	 * Gets the row object for the row key specified. Unless the row key index
+	 * was built or checked in this request, the key of the row found is
+	 * checked and the index rebuilt if the source rows changed since.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param rowKey
+	 *            the rowKey string
+	 * @return the row object or null if there is no such row
+	 */
+	public Object getRowData(FacesContext context, String rowKey) {
+		if (context == null) {
+			return null;
+		}
+		final List<Object> source = getSourceRows(context);
+		if (rowKeyIndex == null && !restoreCachedView(context)) {
+			// not built yet, or left out of the saved state
+			reMapRows();
+		}
+		int index = rowKeyIndex.indexOf(rowKey);
+		if (!isRowKeyIndexVerified(context) && (index < 0 || !isRowKey(context, source.get(index), rowKey))) {
+			reMapRows();
+			index = rowKeyIndex.indexOf(rowKey);
+		}
+		return index < 0 ? null : source.get(index);
+	}
+
+	/**
+	 * True if the row key index was built or checked against the source rows
+	 * in the request specified, so rows are looked up without evaluating
+	 * their key.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @return
+	 */
+	protected boolean isRowKeyIndexVerified(FacesContext context) {
+		return rowKeyIndex != null && context != null
+				&& context.getAttributes().containsKey(getClientId(context) + ROW_KEYS_VERIFIED);
+	}
+
+	/**
+	 * Marks the row key index as built or checked against the source rows of
+	 * the current request, or not.
+	 */
+	private void setRowKeyIndexVerified(FacesContext context, boolean verified) {
+		if (verified) {
+			context.getAttributes().put(getClientId(context) + ROW_KEYS_VERIFIED, Boolean.TRUE);
+		} else {
+			context.getAttributes().remove(getClientId(context) + ROW_KEYS_VERIFIED);
+		}
+	}
+
+	/**
+	 * The index of the source rows by row key, once built. Check
+	 * {@link #isRowKeyIndexVerified(FacesContext)} before relying on it.
+	 *
+	 * @return the index or null
+	 */
+	protected RowKeyIndex getRowKeyIndex() {
+		return rowKeyIndex;
+	}
+
+	/**
+	 * True if the row has the row key specified. Leaves the row var unset.
+	 */
+	private boolean isRowKey(FacesContext context, Object row, String rowKey) {
+		try {
+			return rowKey.equals(getRowKeyValueAsString(context, row));
+		} finally {
+			context.getExternalContext().getRequestMap().remove(getVar());
+		}
+	}
+	/**
+	 * Gets the object value of the row and col specified. If a local value
+	 * exists, that is returned, otherwise the actual value is return.
+	 *
+	 * @param context
+	 * @param rowKey
+	 * @param col
+	 * @return
+	 */
+	public Object getValueForCell(FacesContext context, String rowKey, int col) {
+		// if we have a local value, use it
+		// note: can't check for null, as null may be the submitted value
+		if (localValues.containsKey(rowKey, col)) {
+			return localValues.get(rowKey, col);
+		}
+
+		return getRowValue(context, getRenderPlan(context).getValueExpression(col), getRowData(context, rowKey));
+	}
+
+	/**
+	 * Gets the compiled property path for the expression, compiling it the
+	 * first time the expression is used. A compiled path is only used if it
+	 * resolves to the same value as the expression on the first row, see
+	 * {@link #isDirectPropertyAccess()}.
+	 *
+	 * @param ve
+	 *            the value expression
+	 * @return the compiled path, or null if the expression is not a plain
+	 *         property path on the row var or must be evaluated through EL
+	 */
+	protected PropertyPath getPropertyPath(ValueExpression ve) {
+		if (propertyPaths == null) {
+			propertyPaths = new HashMap<ValueExpression, PropertyPath>();
+		}
+		if (propertyPaths.containsKey(ve)) {
+			return propertyPaths.get(ve);
+		}
+		if (ve.isLiteralText() || !isDirectPropertyAccess()) {
+			propertyPaths.put(ve, null);
+			return null;
+		}
+		final PropertyPath path = PropertyPath.compile(ve.getExpressionString(), getVar());
+		if (path == null) {
+			propertyPaths.put(ve, null);
+			return null;
+		}
+		final FacesContext context = FacesContext.getCurrentInstance();
+		final List<Object> rows = getSourceRows(context);
+		if (rows.isEmpty()) {
+			// nothing to check against yet
+			return path;
+		}
+		final PropertyPath checked = isResolvedAlike(context, ve, path, rows.get(0)) ? path : null;
+		propertyPaths.put(ve, checked);
+		return checked;
+	}
+
+	/**
+	 * True if the compiled path resolves to the same value as the expression
+	 * on the row specified. A custom EL resolver for the row objects or their
+	 * properties makes them differ.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param ve
+	 *            the value expression
+	 * @param path
+	 *            the compiled path of the expression
+	 * @param row
+	 *            the row to compare on
+	 * @return
+	 */
+	private boolean isResolvedAlike(FacesContext context, ValueExpression ve, PropertyPath path, Object row) {
+		final Object value = path.getValue(row);
+		if (value == PropertyPath.UNRESOLVED) {
+			// falls back to the expression for such rows anyway
+			return true;
+		}
+		final Map<String, Object> requestMap = context.getExternalContext().getRequestMap();
+		final Object previous = requestMap.put(getVar(), row);
+		try {
+			final Object expected = ve.getValue(context.getELContext());
+			if (value == expected || (value != null && value.equals(expected))) {
+				return true;
+			}
+		} catch (final RuntimeException e) {
+			// the expression reports it when evaluated for the row
+		} finally {
+			if (previous == null) {
+				requestMap.remove(getVar());
+			} else {
+				requestMap.put(getVar(), previous);
+			}
+		}
+		LOG.debug("{} resolves differently through EL, not accessed directly", ve.getExpressionString());
+		return false;
+	}
+
+	/**
+	 * Evaluates a per row expression for the row specified. Plain property
+	 * paths on the row var (e.g. #{row.account.name}) are read from the row
+	 * directly, anything else is evaluated through EL with the row var set.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param ve
+	 *            the value expression
+	 * @param row
+	 *            the row object
+	 * @return the value
+	 */
+	protected Object getRowValue(FacesContext context, ValueExpression ve, Object row) {
+		final PropertyPath path = getPropertyPath(ve);
+		if (path != null) {
+			final Object value = path.getValue(row);
+			if (value != PropertyPath.UNRESOLVED) {
+				return value;
+			}
+		}
+		context.getExternalContext().getRequestMap().put(getVar(), row);
+		return ve.getValue(context.getELContext());
+	}
+
+	/**
+	 * Sets the value of a per row expression for the row specified. See
+	 * {@link #getRowValue(FacesContext, ValueExpression, Object)}.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param ve
+	 *            the value expression
+	 * @param row
+	 *            the row object
+	 * @param value
+	 *            the new value
+	 */
+	protected void setRowValue(FacesContext context, ValueExpression ve, Object row, Object value) {
+		final PropertyPath path = getPropertyPath(ve);
+		if (path != null && path.setValue(row, value, context.getApplication().getExpressionFactory())) {
+			return;
+		}
+		context.getExternalContext().getRequestMap().put(getVar(), row);
+		ve.setValue(context.getELContext(), value);
+	}
+
+	/**
+	 * Gets the render string for the value the given cell. Applys the available
+	 * converters to convert the value.
+	 *
+	 * @param context
+	 * @param rowKey
+	 * @param col
+	 * @return
+	 */
+	public String getRenderValueForCell(FacesContext context, String rowKey, int col) {
+
+		// if we have a submitted value still, use it
+		// note: can't check for null, as null may be the submitted value
+		if (submittedValues.containsKey(rowKey, col)) {
+			return submittedValues.get(rowKey, col);
+		}
+
+		return getRenderString(context, col, getRowData(context, rowKey), getValueForCell(context, rowKey, col));
+	}
+
+	/**
+	 * Converts the value of a cell to its render string with the converter of
+	 * the column, or toString() if there is none.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param col
+	 *            the real column index
+	 * @param row
+	 *            the row object of the cell
+	 * @param value
+	 *            the value of the cell
+	 * @return the render string, or null for a null value
+	 */
+	protected String getRenderString(FacesContext context, int col, Object row, Object value) {
+		if (value == null) {
+			return null;
+		}
+
+		final Converter converter = getRenderPlan(context).getConverter(context, this, col, row, value);
+		if (converter == null) {
+			return value.toString();
+		} else {
+			return converter.getAsString(context, this, value);
+		}
+	}
+
+	/**
+	 * Gets the render strings of the rendered columns of the row. When the
+	 * sheet has a rowVersion expression, the strings are cached by row key and
+	 * reused as long as the version of the row is unchanged. Rows with
+	 * submitted or local values are never cached.
+	 *
+	 * @param context
+	 * @param rowKey
+	 * @return the render values in render order
+	 */
+	public String[] getRenderValuesForRow(FacesContext context, String rowKey) {
+		final int[] renderedColumns = getRenderPlan(context).getRenderedColumns();
+		final ValueExpression veVersion = getValueExpression(PropertyKeys.rowVersion.name());
+		String version = null;
+		if (veVersion != null && !hasPendingValues(rowKey, renderedColumns)) {
+			final Object value = getRowValue(context, veVersion, getRowData(context, rowKey));
+			if (value != null) {
+				version = value.toString();
+				final String[] cells = getRowCache(context).get(rowKey, version);
+				if (cells != null) {
+					return cells;
+				}
+			}
+		}
+
+		final String[] cells = new String[renderedColumns.length];
+		for (int i = 0; i < renderedColumns.length; i++) {
+			cells[i] = getRenderValueForCell(context, rowKey, renderedColumns[i]);
+		}
+		if (version != null) {
+			rowCache.put(rowKey, version, cells);
+		}
+		return cells;
+	}
+
+	/**
+	 * True if any of the columns specified has a submitted or local value for
+	 * the row.
+	 *
+	 * @param rowKey
+	 * @param cols
+	 * @return
+	 */
+	protected boolean hasPendingValues(String rowKey, int[] cols) {
+		if (submittedValues.isEmpty() && localValues.isEmpty()) {
+			return false;
+		}
+		for (final int col : cols) {
+			if (hasSubmittedValue(rowKey, col) || hasLocalValue(rowKey, col)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Clears the row cache, e.g. after changes to the data that are not
+	 * reflected in the row versions.
+	 */
+	public void resetRowCache() {
+		final RowRenderCache cache = findRowCache(FacesContext.getCurrentInstance());
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Gets the row cache of the sheet from the session, creating it if needed
+	 * and validating it against the render plan of the request once.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @return the cache
+	 */
+	private RowRenderCache getRowCache(FacesContext context) {
+		final RenderPlan plan = getRenderPlan(context);
+		if (rowCache == null || rowCachePlan != plan) {
+			rowCache = RowRenderCache.forSheet(context.getExternalContext().getSessionMap(),
+					getSessionMutex(context), getRowCacheKey(context), true);
+			rowCache.validate(getRowCacheSignature(context, plan));
+			rowCachePlan = plan;
+		}
+		return rowCache;
+	}
+
+	/**
+	 * Gets the row cache of the sheet from the session without creating one.
 	 *
 	 * @param context
-	 * @param rowKey
-	 * @param col
-	 * @return
+	 *            the faces context
+	 * @return the cache, or null if there is none
 	 */
-	public Object getValueForCell(FacesContext context, String rowKey, int col) {
-		// if we have a local value, use it
-		// note: can't check for null, as null may be the submitted value
-		final RowColIndex index = new RowColIndex(rowKey, col);
-		if (localValues.containsKey(index)) {
-			return localValues.get(index);
+	private RowRenderCache findRowCache(FacesContext context) {
+		if (context == null || getValueExpression(PropertyKeys.rowVersion.name()) == null
+				|| context.getExternalContext().getSession(false) == null) {
+			return null;
 		}
+		return RowRenderCache.forSheet(context.getExternalContext().getSessionMap(), null,
+				getRowCacheKey(context), false);
+	}
 
-		setRowVar(context, rowKey);
-		final Column column = getColumns().get(col);
-		return column.getValueExpression("value").getValue(context.getELContext());
+	/**
+	 * Identifies the sheet in the session.
+	 */
+	private String getRowCacheKey(FacesContext context) {
+		return context.getViewRoot().getViewId() + "|" + getClientId(context);
 	}
 
 	/**
-	 * Gets the render string for the value the given cell. Applys the available
-	 * converters to convert the value.
+	 * The lock of the session, creating the session if needed. Session caches
+	 * are created under it, so requests of other sessions aren't blocked.
 	 *
 	 * @param context
-	 * @param rowKey
-	 * @param col
-	 * @return
+	 *            the faces context
+	 * @return the session
 	 */
-	public String getRenderValueForCell(FacesContext context, String rowKey, int col) {
+	static Object getSessionMutex(FacesContext context) {
+		return context.getExternalContext().getSession(true);
+	}
 
-		// if we have a submitted value still, use it
-		// note: can't check for null, as null may be the submitted value
-		final RowColIndex index = new RowColIndex(rowKey, col);
-		if (submittedValues.containsKey(index)) {
-			return submittedValues.get(index);
+	/**
+	 * Gets the filter cache of this view of the sheet from the session.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param create
+	 *            true to create the cache if there is none
+	 * @return the cache, or null if there is none and create is false or
+	 *         there is no session
+	 */
+	protected FilterCache getFilterCache(FacesContext context, boolean create) {
+		// the id of this instance of the sheet, kept in the component state
+		// so each view of the page (e.g. in another browser tab) has its own
+		String id = (String) getStateHelper().get(PropertyKeys.instanceId);
+		if (id == null) {
+			if (!create) {
+				return null;
+			}
+			id = UUID.randomUUID().toString();
+			getStateHelper().put(PropertyKeys.instanceId, id);
 		}
-
-		final Object value = getValueForCell(context, rowKey, col);
-		if (value == null) {
+		if (!create && context.getExternalContext().getSession(false) == null) {
 			return null;
 		}
+		return FilterCache.forView(context.getExternalContext().getSessionMap(),
+				create ? getSessionMutex(context) : null, getRowCacheKey(context) + "|" + id, create);
+	}
 
-		final Column column = getColumns().get(col);
-		final Converter converter = ComponentUtils.getConverter(context, column);
-		if (converter == null) {
-			return value.toString();
-		} else {
-			return converter.getAsString(context, this, value);
+	/**
+	 * Describes what the encoded cells depend on besides the row: the locale
+	 * of the view, the rendered columns and their explicit converters.
+	 */
+	private String getRowCacheSignature(FacesContext context, RenderPlan plan) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(context.getViewRoot().getLocale());
+		for (final int col : plan.getRenderedColumns()) {
+			sb.append('|').append(col).append(':');
+			sb.append(RowRenderCache.describe(plan.getColumn(col).getConverter()));
 		}
+		return sb.toString();
 	}
 
 	/**
@@ -863,15 +1738,65 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	}
 
 	/**
-	 * The sorted list of values.
+	 * The sorted list of values, a read only view of the source rows in
+	 * sorted and filtered order.
 	 *
 	 * @return
 	 */
 	public List<Object> getSortedValues() {
-		if (sortedList == null) {
+		final FacesContext context = FacesContext.getCurrentInstance();
+		if (sortedRows == null) {
+			restoreCachedView(context);
+		}
+		if (sortedRows != null) {
+			// drops the view if the number of rows changed
+			getSourceRows(context);
+		}
+		if (sortedRows == null) {
 			sortAndFilter();
 		}
-		return sortedList;
+		return new SortedRows(getSourceRows(context), sortedRows, sortedRows.length);
+	}
+
+	/**
+	 * Gets the rows of the value, read once per request. If the value isn't
+	 * a random access list, the rows are copied into one. The rows are kept
+	 * in the attributes of the faces context for the rest of the request. If
+	 * the number of rows changed since the row key index was built, the index
+	 * is rebuilt.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @return the rows
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<Object> getSourceRows(FacesContext context) {
+		final String key = getClientId(context) + SOURCE_ROWS;
+		List<Object> sourceRows = (List<Object>) context.getAttributes().get(key);
+		if (sourceRows == null) {
+			final Object value = getValue();
+			if (value == null) {
+				sourceRows = Collections.emptyList();
+			} else if (value instanceof List && value instanceof RandomAccess) {
+				sourceRows = (List<Object>) value;
+			} else {
+				sourceRows = new ArrayList<Object>((Collection<?>) value);
+			}
+			context.getAttributes().put(key, sourceRows);
+			setRowKeyIndexVerified(context, false);
+			if (rowKeyIndex != null && rowKeyIndex.size() != sourceRows.size()) {
+				reMapRows();
+			}
+		}
+		return sourceRows;
+	}
+
+	/**
+	 * Drops the source rows of the current request, so the value is read
+	 * again.
+	 */
+	private void clearSourceRows(FacesContext context) {
+		context.getAttributes().remove(getClientId(context) + SOURCE_ROWS);
 	}
 
 	/**
@@ -882,7 +1807,18 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	public int getSortColRenderIndex() {
-		final ValueExpression veSortBy = getValueExpression(PropertyKeys.sortBy.name());
+		return getSortColRenderIndex(getValueExpression(PropertyKeys.sortBy.name()));
+	}
+
+	/**
+	 * Gets the rendered col index of the column sorted by the sort by
+	 * expression specified.
+	 *
+	 * @param veSortBy
+	 *            the sort by expression
+	 * @return the rendered col index or -1 if no rendered column sorts by it
+	 */
+	public int getSortColRenderIndex(ValueExpression veSortBy) {
 		if (veSortBy == null) {
 			return -1;
 		}
@@ -913,97 +1849,207 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	protected boolean matchesFilter(Object obj) {
-		for (final Column col : getColumns()) {
-			final String filterValue = col.getFilterValue();
-			if (StringUtils.isEmpty(filterValue)) {
-				continue;
-			}
+		// resolves the filters for each call, use a RowFilter for many rows
+		return new RowFilter(FacesContext.getCurrentInstance(), this).matches(obj);
+	}
 
-			final Object filterBy = col.getFilterBy();
-			// if we have a filter, but no value in the row, no match
-			if (filterBy == null) {
+	/**
+	 * Sorts and filters the data unless the sorted rows and row key index were
+	 * already built for the current data version, sort and filters, see
+	 * {@link #getViewKey(FacesContext)}. The rows are read again either way;
+	 * with an unchanged data version, they are expected to be the same rows
+	 * in the same order. Without a data version, only a view updated for the
+	 * edits of the current request is reused, by the render of that request.
+	 *
+	 * @return true if sorted and filtered, false if the current view was
+	 *         reused
+	 */
+	public boolean sortAndFilterIfChanged() {
+		final FacesContext context = FacesContext.getCurrentInstance();
+		final String key = getViewKey(context);
+		if (key != null && !key.equals(viewKey)) {
+			restoreCachedView(context);
+		}
+		final boolean current = key == null
+				? buildViewKey("").equals(context.getAttributes().get(getClientId(context) + UPDATED_VIEW))
+				: key.equals(viewKey);
+		if (current && sortedRows != null && rowKeyIndex != null) {
+			clearSourceRows(context);
+			getSourceRows(context);
+			// the view is dropped if the number of rows changed
+			if (sortedRows != null) {
+				setRowKeyIndexVerified(context, true);
 				return false;
 			}
+		}
+		sortAndFilter();
+		return true;
+	}
 
-			// case-insensitive
-			final String compareA = filterBy.toString().toLowerCase();
-			final String compareB = filterValue.toLowerCase();
+	/**
+	 * Identifies the sorted and filtered view of the data: the data version,
+	 * the sort criteria and collation, the filter of each column and the row
+	 * key codec. Without a data version, changes to the data can't be
+	 * detected and there is no key.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @return the key or null if the view must always be rebuilt
+	 */
+	protected String getViewKey(FacesContext context) {
+		final Object dataVersion = getDataVersion();
+		return dataVersion == null ? null : buildViewKey(dataVersion);
+	}
 
-			// TODO need to support match modes
-			if (!compareA.contains(compareB)) {
-				return false;
+	/**
+	 * Builds the key of the current view for the data version specified.
+	 */
+	private String buildViewKey(Object dataVersion) {
+		final ViewKey key = new ViewKey(dataVersion);
+		for (final SortCriterion criterion : getSortCriteria()) {
+			key.sortBy(criterion.getSortBy().getExpressionString(), criterion.getSortOrder());
+		}
+		final List<Column> columns = getColumns();
+		for (int i = 0; i < columns.size(); i++) {
+			final Column column = columns.get(i);
+			if (StringUtils.isNotEmpty(column.getFilterValue())) {
+				final ValueExpression veFilterBy = column.getValueExpression("filterBy");
+				key.filter(i, column.getFilterMatchMode(),
+						veFilterBy == null ? column.getFilterBy() : veFilterBy.getExpressionString(),
+						column.getFilterValue());
 			}
 		}
-		return true;
+		return key.collation(getSortLocale(), getSortCollatorStrength()).codec(getRowKeyCodec()).getKey();
 	}
 
 	/**
 	 * Sorts and filters the data
 	 */
-	@SuppressWarnings("unchecked")
 	public void sortAndFilter() {
-		sortedList = new ArrayList<Object>();
-		rowMap = new HashMap<String, Object>();
+		final FacesContext context = FacesContext.getCurrentInstance();
+		final String key = getViewKey(context);
+		rowKeyIndex = null;
+		sortedRows = null;
+		clearSourceRows(context);
+		final List<Object> values = getSourceRows(context);
 
-		final Collection<?> values = (Collection<?>) getValue();
-		if (values == null || values.isEmpty()) {
-			return;
+		reMapRows();
+		final RowRenderCache cache = findRowCache(context);
+		if (cache != null && !values.isEmpty()) {
+			cache.retain(rowKeyIndex.keySet());
 		}
 
-		reMapRows();
+		final int threshold = getParallelThreshold();
+		final boolean parallel = threshold > 0 && values.size() >= threshold;
 
-		boolean filters = false;
-		for (final Column col : getColumns()) {
-			if (StringUtils.isNotEmpty(col.getFilterValue())) {
-				filters = true;
-				break;
-			}
+		final int[] rows = new RowFilter(context, this).filterIndexes(values, parallel);
+		final List<SortCriterion> criteria = getSortCriteria();
+		boolean nullKeys = false;
+		if (!criteria.isEmpty() && rows.length > 0) {
+			// sort keys are evaluated once per row rather than per comparison
+			nullKeys = !new RowSorter(getSortLocale(), getSortCollatorStrength()).sort(context, this, values, rows,
+					criteria, parallel);
 		}
+		sortedRows = rows;
+		sortedWithNullKeys = nullKeys;
+		viewKey = key;
+		cacheView(context);
+	}
 
-		final FacesContext context = FacesContext.getCurrentInstance();
-		final Map<String, Object> requestMap = context.getExternalContext().getRequestMap();
-
-		if (filters) {
-			// iterate and add those matching the filters
-			final String var = getVar();
-			for (final Object obj : values) {
-				requestMap.put(var, obj);
-				try {
-					if (matchesFilter(obj)) {
-						sortedList.add(obj);
-					}
-				} finally {
-					requestMap.remove(var);
-				}
-			}
-		} else {
-			sortedList.addAll(values);
+	/**
+	 * Holds the current view in the session by its view key, if there is a
+	 * data version.
+	 */
+	private void cacheView(FacesContext context) {
+		if (viewKey != null) {
+			ViewCache.put(context.getExternalContext().getSessionMap(), getSessionMutex(context),
+					getRowCacheKey(context) + "|" + viewKey, new ViewCache(sortedRows, rowKeyIndex, sortedWithNullKeys));
 		}
+	}
 
-		final ValueExpression veSortBy = this.getValueExpression(PropertyKeys.sortBy.name());
-		if (veSortBy != null) {
-			Collections.sort(sortedList, new BeanPropertyComparator(veSortBy, getVar(), convertSortOrder(), null, false,
-					Locale.ENGLISH, 0));
+	/**
+	 * Marks the view for rebuilding on the next render, also dropping the view
+	 * held in the session for the current view key, which is stale.
+	 */
+	private void dropView(FacesContext context) {
+		final String key = viewKey != null ? viewKey : getViewKey(context);
+		viewKey = null;
+		if (key != null && context.getExternalContext().getSession(false) != null) {
+			ViewCache.remove(context.getExternalContext().getSessionMap(), getRowCacheKey(context) + "|" + key);
 		}
+	}
 
+	/**
+	 * Restores the view held in the session for the current view key, if
+	 * any.
+	 *
+	 * @return true if restored
+	 */
+	private boolean restoreCachedView(FacesContext context) {
+		final String key = getViewKey(context);
+		if (key == null || context.getExternalContext().getSession(false) == null) {
+			return false;
+		}
+		final ViewCache view = ViewCache.get(context.getExternalContext().getSessionMap(),
+				getRowCacheKey(context) + "|" + key);
+		if (view == null || view.getRowKeyIndex().size() != getSourceRows(context).size()) {
+			return false;
+		}
+		sortedRows = view.getSortedRows();
+		rowKeyIndex = view.getRowKeyIndex();
+		sortedWithNullKeys = view.isSortedWithNullKeys();
+		viewKey = key;
+		setRowKeyIndexVerified(context, false);
+		return true;
 	}
 
 	/**
-	 * Remaps the row keys to the sorted and filtered list.
+	 * Rebuilds the row key index from the source rows. A sorted and filtered
+	 * view of other rows is dropped.
+	 *
+	 * @throws FacesException
+	 *             if distinct rowKey values encode to the same row key and the
+	 *             codec treats that as an error
 	 */
 	protected void reMapRows() {
 		final FacesContext context = FacesContext.getCurrentInstance();
+		rowKeyIndex = buildRowKeyIndex(context);
+		setRowKeyIndexVerified(context, true);
+		sortedRows = null;
+		viewKey = null;
+		context.getAttributes().remove(getClientId(context) + UPDATED_VIEW);
+	}
+
+	/**
+	 * Builds the row key index of the source rows.
+	 *
+	 * @throws FacesException
+	 *             if distinct rowKey values encode to the same row key and the
+	 *             codec treats that as an error
+	 */
+	private RowKeyIndex buildRowKeyIndex(FacesContext context) {
 		final Map<String, Object> requestMap = context.getExternalContext().getRequestMap();
-		final Collection<?> values = (Collection<?>) getValue();
-		final String var = getVar();
-		for (final Object obj : values) {
-			requestMap.put(var, obj);
-			try {
-				rowMap.put(getRowKeyValueAsString(context), obj);
-			} finally {
-				requestMap.remove(var);
+		final RowKeyCodec codec = getRenderPlan(context).getRowKeyCodec();
+		final List<Object> values = getSourceRows(context);
+		final Object[] rawKeys = new Object[values.size()];
+		final String[] keys = new String[rawKeys.length];
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				rawKeys[i] = getRowKeyValue(context, values.get(i));
+				keys[i] = codec.encode(rawKeys[i]);
 			}
+		} finally {
+			requestMap.remove(getVar());
+		}
+		final RowKeyIndex index = new RowKeyIndex(keys);
+		final String collision = RowKeyCodec.findCollision(rawKeys, index);
+		if (collision != null) {
+			if (codec.isCollisionError()) {
+				throw new FacesException(collision);
+			}
+			LOG.warn(collision);
 		}
+		return index;
 	}
 
 	/**
@@ -1025,19 +2071,37 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		return value;
 	}
 
+	/**
+	 * Gets the rowKey for the row specified
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param row
+	 *            the row object
+	 * @return a row key value
+	 */
+	protected Object getRowKeyValue(FacesContext context, Object row) {
+		final ValueExpression veRowKey = getValueExpression(PropertyKeys.rowKey.name());
+		if (veRowKey == null) {
+			throw new RuntimeException("RowKey required on sheet!");
+		}
+		final Object value = getRowValue(context, veRowKey, row);
+		if (value == null) {
+			throw new RuntimeException("RowKey must resolve to non-null value for updates to work properly");
+		}
+		return value;
+	}
+
 	/**
 	 * Gets the row key value as a String suitable for use in javascript
-	 * rendering.
+	 * rendering, encoded by the row key codec.
 	 * <p>
 	 *
-	 * @param context
+	 * @param key
 	 * @return
 	 */
 	protected String getRowKeyValueAsString(Object key) {
-		// TODO for now just use toString and remove spaces/etc, but in future
-		// we'll want to revisit this to support complex key objects
-		final String result = key.toString();
-		return "r_" + StringUtils.deleteWhitespace(result);
+		return getRenderPlan(FacesContext.getCurrentInstance()).getRowKeyCodec().encode(key);
 	}
 
 	/**
@@ -1048,7 +2112,19 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	protected String getRowKeyValueAsString(FacesContext context) {
-		return getRowKeyValueAsString(getRowKeyValue(context));
+		return getRenderPlan(context).getRowKeyCodec().encode(getRowKeyValue(context));
+	}
+
+	/**
+	 * Gets the row key value as a string for the row specified.
+	 * <p>
+	 *
+	 * @param context
+	 * @param row
+	 * @return
+	 */
+	protected String getRowKeyValueAsString(FacesContext context, Object row) {
+		return getRenderPlan(context).getRowKeyCodec().encode(getRowKeyValue(context, row));
 	}
 
 	/**
@@ -1126,6 +2202,52 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		setValueExpression(PropertyKeys.sortBy.name(), sortBy);
 	}
 
+	/**
+	 * The sort criteria following the sortBy expression when sorting by
+	 * multiple columns, most significant first.
+	 *
+	 * @return the criteria, empty if sorting by sortBy only
+	 */
+	@SuppressWarnings("unchecked")
+	public List<SortCriterion> getSecondarySort() {
+		final List<SortCriterion> result = (List<SortCriterion>) getStateHelper().get(PropertyKeys.secondarySort);
+		return result == null ? Collections.<SortCriterion> emptyList() : result;
+	}
+
+	/**
+	 * Update the sort criteria following the sortBy expression
+	 *
+	 * @param criteria
+	 *            the criteria, null or empty to sort by sortBy only
+	 */
+	public void setSecondarySort(List<SortCriterion> criteria) {
+		if (criteria == null || criteria.isEmpty()) {
+			getStateHelper().remove(PropertyKeys.secondarySort);
+		} else {
+			getStateHelper().put(PropertyKeys.secondarySort, new ArrayList<SortCriterion>(criteria));
+		}
+	}
+
+	/**
+	 * All sort criteria: the sortBy expression and sort order followed by the
+	 * secondary sort criteria.
+	 *
+	 * @return the criteria, empty if not sorted
+	 */
+	public List<SortCriterion> getSortCriteria() {
+		final ValueExpression veSortBy = getSortByValueExpression();
+		if (veSortBy == null) {
+			return Collections.emptyList();
+		}
+		final List<SortCriterion> secondary = getSecondarySort();
+		final List<SortCriterion> result = new ArrayList<SortCriterion>(secondary.size() + 1);
+		// anything but ascending sorts descending, as before
+		result.add(new SortCriterion(veSortBy,
+				convertSortOrder() == SortOrder.ASCENDING ? "ascending" : "descending"));
+		result.addAll(secondary);
+		return result;
+	}
+
 	/**
 	 * The sort direction
 	 *
@@ -1193,20 +2315,20 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		// data type. For successful values, remove from submitted and add to
 		// local values map. for failures, add a conversion message and leave in
 		// the submitted state
-		final Iterator<Entry<RowColIndex, String>> entries = submittedValues.entrySet().iterator();
+		final CellMap<String>.Cursor entries = submittedValues.cursor();
 		final boolean hadBadUpdates = !getBadUpdates().isEmpty();
 		getBadUpdates().clear();
-		while (entries.hasNext()) {
-			final Entry<RowColIndex, String> entry = entries.next();
-			final Column column = getColumns().get(entry.getKey().colIndex);
-			final String newValue = entry.getValue();
-			final String rowKey = entry.getKey().getRowKey();
-			final int col = entry.getKey().getColIndex();
-			setRowVar(context, rowKey);
+		while (entries.next()) {
+			final RenderPlan plan = getRenderPlan(context);
+			final Column column = plan.getColumn(entries.getColIndex());
+			final String newValue = entries.getValue();
+			final String rowKey = entries.getRowKey();
+			final int col = entries.getColIndex();
 
 			// attempt to convert new value from string to correct object type
-			// based on column converter. Use PF util as helper
-			final Converter converter = ComponentUtils.getConverter(context, column);
+			// based on column converter, resolved once per request
+			final Converter converter = plan.getConverter(context, this, col, getRowData(context, rowKey));
+			setRowVar(context, rowKey);
 
 			// assume string value if converter not found
 			Object newValueObj = newValue;
@@ -1275,51 +2397,163 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 */
 	@Override
 	public void updateModel(FacesContext context) {
-		final Iterator<Entry<RowColIndex, Object>> entries = localValues.entrySet().iterator();
+		final CellMap<Object>.Cursor entries = localValues.cursor();
 		// Keep track of the dirtied rows for ajax callbacks so we can send
 		// updates on what was touched
 		final HashSet<String> dirtyRows = new HashSet<String>();
-		while (entries.hasNext()) {
-			final Entry<RowColIndex, Object> entry = entries.next();
-
-			final Object newValue = entry.getValue();
-			final String rowKey = entry.getKey().getRowKey();
-			final int col = entry.getKey().getColIndex();
+		final BitSet dirtyIndexes = new BitSet();
+		while (entries.next()) {
+			final Object newValue = entries.getValue();
+			final String rowKey = entries.getRowKey();
+			final int col = entries.getColIndex();
 			final Column column = getColumns().get(col);
+			final Object rowVal = getRowData(context, rowKey);
+			final int index = rowKeyIndex.indexOf(rowKey);
+			if (index >= 0) {
+				dirtyIndexes.set(index);
+			}
 			setRowVar(context, rowKey);
-			final Object rowVal = rowMap.get(rowKey);
 
 			final ValueExpression ve = column.getValueExpression(PropertyKeys.value.name());
-			final ELContext elContext = context.getELContext();
-			final Object oldValue = ve.getValue(elContext);
-			ve.setValue(elContext, newValue);
+			final Object oldValue = getRowValue(context, ve, rowVal);
+			setRowValue(context, ve, rowVal, newValue);
 			entries.remove();
-			appendUpdateEvent(this.getRowKeyValue(context), col, rowVal, oldValue, newValue);
+			appendUpdateEvent(this.getRowKeyValue(context, rowVal), col, rowVal, oldValue, newValue);
 			dirtyRows.add(rowKey);
 		}
 		setLocalValueSet(false);
 		setRowVar(context, null);
 
+		if (!dirtyRows.isEmpty()) {
+			final RowRenderCache cache = findRowCache(context);
+			if (cache != null) {
+				for (final String rowKey : dirtyRows) {
+					cache.remove(rowKey);
+				}
+			}
+			if (rowKeysChanged(context, dirtyIndexes)) {
+				// the rows stay where they are, only their keys changed
+				rowKeyIndex = buildRowKeyIndex(context);
+				setRowKeyIndexVerified(context, true);
+			}
+			RowFilter.invalidate(context, this);
+			updateView(context, dirtyIndexes, dirtyRows.size());
+		}
+
 		if (context.getPartialViewContext().isPartialRequest()) {
 			this.renderRowUpdateScript(context, dirtyRows);
 		}
 	}
 
 	/**
-	 * Saves the state of the submitted and local values and the bad updates.
+	 * True if the row key of one of the rows specified no longer matches the
+	 * row key index.
+	 */
+	private boolean rowKeysChanged(FacesContext context, BitSet rows) {
+		final List<Object> source = getSourceRows(context);
+		for (int index = rows.nextSetBit(0); index >= 0; index = rows.nextSetBit(index + 1)) {
+			if (!isRowKey(context, source.get(index), rowKeyIndex.getKey(index))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the sorted and filtered view for rows whose values changed: the
+	 * rows are checked against the filters again and moved to their sorted
+	 * position, leaving the other rows as they are, with the same result as
+	 * sorting and filtering all rows again (see {@link ViewUpdater}). If that
+	 * isn't possible or too many rows changed, the view is rebuilt on the
+	 * next render instead.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @param dirtyIndexes
+	 *            the source indexes of the changed rows
+	 * @param dirtyCount
+	 *            the number of changed rows
+	 */
+	protected void updateView(FacesContext context, BitSet dirtyIndexes, int dirtyCount) {
+		context.getAttributes().remove(getClientId(context) + UPDATED_VIEW);
+		if (sortedRows == null || rowKeyIndex == null) {
+			dropView(context);
+			return;
+		}
+		final List<SortCriterion> criteria = getSortCriteria();
+		// removal is a single pass, each insert a binary search; many changes
+		// are cheaper to sort again
+		if (dirtyCount > MAX_INCREMENTAL_ROWS || dirtyIndexes.cardinality() < dirtyCount
+				|| (!criteria.isEmpty() && sortedWithNullKeys)) {
+			dropView(context);
+			return;
+		}
+
+		final List<Object> source = getSourceRows(context);
+		final RowFilter filter = new RowFilter(context, this);
+		final RowSorter sorter = criteria.isEmpty() ? null
+				: new RowSorter(getSortLocale(), getSortCollatorStrength());
+		final RowSorter.KeySource keys = sorter == null ? null
+				: sorter.getKeySource(context, this, source, criteria);
+		final ViewUpdater updater = sorter == null ? new ViewUpdater()
+				: new ViewUpdater(sorter, RowSorter.getAscending(criteria));
+		final int[] rows;
+		try {
+			rows = updater.update(sortedRows, dirtyIndexes, new ViewUpdater.Rows() {
+
+				public boolean matches(int row) {
+					return filter.matches(source.get(row));
+				}
+
+				public Object[] getKeys(int row) {
+					return keys.getKeys(row);
+				}
+			});
+		} finally {
+			context.getExternalContext().getRequestMap().remove(getVar());
+		}
+		if (rows == null) {
+			// a null sort key, the order is only known after a full sort
+			dropView(context);
+			return;
+		}
+		sortedRows = rows;
+		if (viewKey != null) {
+			cacheView(context);
+		} else if (getDataVersion() == null) {
+			context.getAttributes().put(getClientId(context) + UPDATED_VIEW, buildViewKey(""));
+		}
+	}
+
+	/**
+	 * Saves the state of the submitted and local values, the bad updates, the
+	 * column mapping and the sorted and filtered view, see
+	 * {@link SheetState}. The column mapping is only saved if a column has a
+	 * rendered expression, otherwise decode maps the columns the same way. The
+	 * view is only saved for lazy sheets without data version; with a data
+	 * version it is held in the session by its view key (see
+	 * {@link ViewCache}), without, it is rebuilt on the next render and the
+	 * row key index when first needed.
 	 */
 	@Override
 	public Object saveState(FacesContext context) {
-		final Object values[] = new Object[7];
-		values[0] = super.saveState(context);
-		values[1] = submittedValues;
-		values[2] = localValues;
-		values[3] = badUpdates;
-		values[4] = columnMapping;
-		values[5] = sortedList;
-		values[6] = rowMap;
+		final ViewCache view = !isLightweightState() && viewKey == null && isLazy() && sortedRows != null
+				&& rowKeyIndex != null ? new ViewCache(sortedRows, rowKeyIndex, sortedWithNullKeys) : null;
+		return SheetState.save(initialStateMarked(), super.saveState(context), submittedValues, localValues,
+				badUpdates, columnMapping, !hasRenderedExpression(), view);
+	}
 
-		return values;
+	/**
+	 * True if a column has a rendered expression, so the rendered columns
+	 * may change between requests.
+	 */
+	private boolean hasRenderedExpression() {
+		for (final Column column : getColumns()) {
+			if (column.getValueExpression("rendered") != null) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -1338,19 +2572,18 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		final Object restoredLocalValues = values[2];
 		final Object restoredBadUpdates = values[3];
 		final Object restoredColMappings = values[4];
-		final Object restoredSortedList = values[5];
-		final Object restoredRowMap = values[6];
+		final ViewCache restoredView = (ViewCache) values[5];
 
 		if (restoredSubmittedValues == null) {
 			submittedValues.clear();
 		} else {
-			submittedValues = (Map<RowColIndex, String>) restoredSubmittedValues;
+			submittedValues = (CellMap<String>) restoredSubmittedValues;
 		}
 
 		if (restoredLocalValues == null) {
 			localValues.clear();
 		} else {
-			localValues = (Map<RowColIndex, Object>) restoredLocalValues;
+			localValues = (CellMap<Object>) restoredLocalValues;
 		}
 
 		if (restoredBadUpdates == null) {
@@ -1362,20 +2595,17 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		if (restoredColMappings == null) {
 			columnMapping = null;
 		} else {
-			columnMapping = (Map<Integer, Integer>) restoredColMappings;
+			columnMapping = (int[]) restoredColMappings;
 		}
 
-		if (restoredSortedList == null) {
-			sortedList = null;
-		} else {
-			sortedList = (List<Object>) restoredSortedList;
-		}
+		sortedRows = restoredView == null ? null : restoredView.getSortedRows();
+		rowKeyIndex = restoredView == null ? null : restoredView.getRowKeyIndex();
+		sortedWithNullKeys = restoredView != null && restoredView.isSortedWithNullKeys();
+		clearSourceRows(context);
+		setRowKeyIndexVerified(context, false);
+		context.getAttributes().remove(getClientId(context) + UPDATED_VIEW);
 
-		if (restoredRowMap == null) {
-			rowMap = null;
-		} else {
-			rowMap = (Map<String, Object>) restoredRowMap;
-		}
+		viewKey = null;
 	}
 
 	/**
@@ -1424,7 +2654,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		if (submittedValue == null) {
 			submittedValues.clear();
 		} else {
-			submittedValues = (Map<RowColIndex, String>) submittedValue;
+			submittedValues = (CellMap<String>) submittedValue;
 		}
 
 	}
@@ -1452,13 +2682,15 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	}
 
 	/**
-	 * Returns true if any of the columns contain conditional styling.
+	 * Returns true if any of the columns contain conditional styling. A style
+	 * class expression counts without being evaluated, as it may depend on the
+	 * row var.
 	 *
 	 * @return
 	 */
 	public boolean isHasStyledCells() {
 		for (final Column column : getColumns()) {
-			if (column.getStyleClass() != null) {
+			if (column.getValueExpression("styleClass") != null || column.getStyleClass() != null) {
 				return true;
 			}
 		}
@@ -1473,15 +2705,10 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return the mapped index
 	 */
 	public int getMappedColumn(int renderIdx) {
-		if (columnMapping == null || renderIdx == -1) {
+		if (renderIdx == -1) {
 			return renderIdx;
-		} else {
-			final Integer result = columnMapping.get(renderIdx);
-			if (result == null) {
-				throw new IllegalArgumentException("Invalid index " + renderIdx);
-			}
-			return result;
 		}
+		return getRenderPlan(FacesContext.getCurrentInstance()).getMapping().getRealIndex(renderIdx);
 	}
 
 	/**
@@ -1491,33 +2718,62 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	 * @return
 	 */
 	public int getRenderIndexFromRealIdx(int realIdx) {
-		if (columnMapping == null || realIdx == -1) {
+		if (realIdx == -1) {
 			return realIdx;
 		}
+		final int renderIdx = getRenderPlan(FacesContext.getCurrentInstance()).getMapping().getRenderIndex(realIdx);
+		return renderIdx == -1 ? realIdx : renderIdx;
+	}
 
-		for (final Entry<Integer, Integer> entry : columnMapping.entrySet()) {
-			if (entry.getValue().equals(realIdx)) {
-				return entry.getKey();
-			}
-		}
+	/**
+	 * Updates the column mappings based on the rendered attribute. Rebuilds
+	 * the render plan, so the rendered attributes and literal column
+	 * attributes are re-evaluated.
+	 */
+	public void updateColumnMappings() {
+		final FacesContext context = FacesContext.getCurrentInstance();
+		final RenderPlan plan = new RenderPlan(this, null);
+		context.getAttributes().put(this, plan);
+		columnMapping = plan.getRenderedColumns().clone();
+	}
 
-		return realIdx;
+	/**
+	 * Gets the column render plan for the current request, building it on
+	 * first use. The plan resolves the rendered columns, converters and
+	 * literal column attributes once so they are not re-evaluated per cell.
+	 * It is kept in the request attributes of the faces context, and on
+	 * postback maps the columns as the client rendered them.
+	 *
+	 * @param context
+	 *            the faces context
+	 * @return the render plan
+	 */
+	public RenderPlan getRenderPlan(FacesContext context) {
+		RenderPlan plan = (RenderPlan) context.getAttributes().get(this);
+		if (plan == null) {
+			plan = new RenderPlan(this, isColumnMappingValid() ? columnMapping : null);
+			context.getAttributes().put(this, plan);
+		}
+		return plan;
 	}
 
 	/**
-	 * Updates the column mappings based on the rendered attribute
+	 * True if the saved column mapping fits the current columns.
+	 *
+	 * @return
 	 */
-	public void updateColumnMappings() {
-		columnMapping = new HashMap<Integer, Integer>();
-		int realIdx = 0;
-		int renderIdx = 0;
-		for (final Column column : getColumns()) {
-			if (column.isRendered()) {
-				columnMapping.put(renderIdx, realIdx);
-				renderIdx++;
+	private boolean isColumnMappingValid() {
+		if (columnMapping == null) {
+			return false;
+		}
+		final boolean[] mapped = new boolean[getColumns().size()];
+		for (final int col : columnMapping) {
+			if (col < 0 || col >= mapped.length || mapped[col]) {
+				return false;
 			}
-			realIdx++;
+			mapped[col] = true;
 		}
+		return true;
 	}
 
 	/**
@@ -1609,14 +2865,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 			setRowVar(context, rowKey);
 			// data is array of array of data
 			final VarBuilder vbRow = new VarBuilder(null, false);
-			for (int col = 0; col < getColumns().size(); col++) {
-				final Column column = getColumns().get(col);
-				if (!column.isRendered()) {
-					continue;
-				}
-
-				// render data value
-				final String value = getRenderValueForCell(context, rowKey, col);
+			for (final String value : getRenderValuesForRow(context, rowKey)) {
 				vbRow.appendArrayValue(value, true);
 			}
 			eval.append("PF('" + jsVar + "')");
@@ -1627,7 +2876,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 			eval.append(");");
 		}
 		eval.append("PF('" + jsVar + "')");
-		eval.append(".ht.render();");
+		eval.append(".redraw();");
 		RequestContext.getCurrentInstance().getScriptsToExecute().add(eval.toString());
 	}
 
@@ -1646,7 +2895,7 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 		sb.append(badDataVar);
 		sb.append(";");
 		sb.append("PF('" + widgetVar + "')");
-		sb.append(".ht.render();");
+		sb.append(".redraw();");
 		RequestContext.getCurrentInstance().getScriptsToExecute().add(sb.toString());
 
 		sb = new StringBuilder();
@@ -1670,66 +2919,33 @@ public class Sheet extends UIInput implements ClientBehaviorHolder, EditableValu
 	}
 
 	/**
-	 * Private class used as a key for row,col maps.
+	 * Read only list of the source rows at the indexes specified.
 	 */
-	private class RowColIndex implements Serializable {
+	private static class SortedRows extends AbstractList<Object> implements RandomAccess {
 
-		private static final long serialVersionUID = 1L;
+		private final List<Object> source;
 
-		private final String rowKey;
-		private final Integer colIndex;
+		private final int[] rows;
 
-		/**
-		 * Constructs an instance of RowColIndex for the row and column
-		 * specified.
-		 * <p>
-		 *
-		 * @param row
-		 *            the row represented by this index
-		 * @param col
-		 *            the column respresented by this index
-		 */
-		public RowColIndex(String rowKey, Integer col) {
-			this.rowKey = rowKey;
-			colIndex = col;
+		private final int size;
+
+		SortedRows(List<Object> source, int[] rows, int size) {
+			this.source = source;
+			this.rows = rows;
+			this.size = size;
 		}
 
-		/*
-		 * (non-Javadoc)
-		 * 
-		 * @see java.lang.Object#equals(java.lang.Object)
-		 */
 		@Override
-		public boolean equals(final Object other) {
-			if (!(other instanceof RowColIndex)) {
-				return false;
+		public Object get(int index) {
+			if (index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
 			}
-			final RowColIndex castOther = (RowColIndex) other;
-			return new EqualsBuilder().append(rowKey, castOther.rowKey).append(colIndex, castOther.colIndex).isEquals();
+			return source.get(rows[index]);
 		}
 
 		@Override
-		public int hashCode() {
-			return new HashCodeBuilder().append(rowKey).append(colIndex).toHashCode();
-		}
-
-		/**
-		 * The rowIndex value.
-		 *
-		 * @return the rowIndex
-		 */
-		public String getRowKey() {
-			return rowKey;
-		}
-
-		/**
-		 * The colIndex value.
-		 *
-		 * @return the colIndex
-		 */
-		public Integer getColIndex() {
-			return colIndex;
+		public int size() {
+			return size;
 		}
-
 	}
 }
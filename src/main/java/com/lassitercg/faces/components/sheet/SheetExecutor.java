@@ -0,0 +1,133 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded thread pool shared by all sheets for parallel encoding,
+ * filtering and sorting, up to one daemon thread per processor. Idle threads
+ * time out, and the pool is shut down with the web application by
+ * {@link SheetExecutorListener}. Tasks run on the pool must never touch the
+ * faces context or the request map.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public final class SheetExecutor {
+
+    /**
+     * How long idle threads are kept, in seconds.
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    private static volatile ExecutorService executor;
+
+    private SheetExecutor() {
+    }
+
+    /**
+     * The shared executor.
+     *
+     * @return
+     */
+    public static ExecutorService get() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (SheetExecutor.class) {
+                result = executor;
+                if (result == null) {
+                    final int threads = Runtime.getRuntime().availableProcessors();
+                    final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new SheetThreadFactory());
+                    pool.allowCoreThreadTimeOut(true);
+                    result = pool;
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shuts the shared executor down, interrupting running tasks. A later
+     * call to {@link #get()} starts a new one.
+     */
+    public static void shutdown() {
+        final ExecutorService result;
+        synchronized (SheetExecutor.class) {
+            result = executor;
+            executor = null;
+        }
+        if (result != null)
+            result.shutdownNow();
+    }
+
+    /**
+     * Runs the tasks on the shared executor and waits for all of them.
+     *
+     * @param tasks the tasks
+     * @return the results of the tasks, in order
+     * @throws RuntimeException the failure of the first failed task, see
+     *                          {@link #getResult(Future)}
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks)
+            futures.add(get().submit(task));
+        final List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : futures)
+                results.add(getResult(future));
+        } finally {
+            for (Future<T> future : futures)
+                future.cancel(false);
+        }
+        return results;
+    }
+
+    /**
+     * Waits for the result of the task.
+     *
+     * @param future the task
+     * @return the result
+     * @throws RuntimeException the runtime exception or error the task failed
+     *                          with as is, any other failure wrapped in an
+     *                          IllegalStateException
+     */
+    public static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Creates named daemon threads so the pool never holds up shutdown.
+     */
+    private static class SheetThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "sheet-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.lassitercg.faces.components.sheet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Shuts the {@link SheetExecutor} down when the web application stops, so its
+ * threads don't outlive the application and hold on to its class loader on
+ * redeploy.
+ * <p>
+ * Registered in the web-fragment of the library.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class SheetExecutorListener implements ServletContextListener {
+
+    public void contextInitialized(ServletContextEvent event) {
+        // the executor is started on first use
+    }
+
+    public void contextDestroyed(ServletContextEvent event) {
+        SheetExecutor.shutdown();
+    }
+}
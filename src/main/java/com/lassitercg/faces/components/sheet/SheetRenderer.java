@@ -22,16 +22,21 @@
  */
 package com.lassitercg.faces.components.sheet;
 
+import com.lassitercg.faces.components.util.CellDeltaReader;
+import com.lassitercg.faces.components.util.ColumnarWriter;
+import com.lassitercg.faces.components.util.EcmaScriptEscaper;
+import com.lassitercg.faces.components.util.PropertyPath;
+import com.lassitercg.faces.components.util.RunLengthWriter;
 import com.lassitercg.faces.components.util.VarBuilder;
+import com.lassitercg.faces.components.util.VarWriter;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.primefaces.json.JSONArray;
 import org.primefaces.json.JSONException;
-import org.primefaces.json.JSONObject;
 import org.primefaces.util.WidgetBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.el.ValueExpression;
 import javax.faces.component.UIComponent;
 import javax.faces.component.behavior.ClientBehavior;
 import javax.faces.component.behavior.ClientBehaviorContext;
@@ -42,8 +47,11 @@ import javax.faces.model.SelectItem;
 import javax.faces.render.FacesRenderer;
 import javax.faces.render.Renderer;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +68,11 @@ public class SheetRenderer extends Renderer {
      */
     private static final Logger LOG = LoggerFactory.getLogger(SheetRenderer.class);
 
+    /**
+     * Column index passed to {@link #encodeStyleRuns} for the row styles.
+     */
+    protected static final int ROW_STYLE = -1;
+
     /**
      * Encodes the Sheet component
      */
@@ -68,11 +81,18 @@ public class SheetRenderer extends Renderer {
 
         final Sheet sheet = (Sheet) component;
 
+        // lazy block requests only get the rows, against the current view
+        int lazyFirst = sheet.getLazyFetchFirst(context);
+        if (lazyFirst >= 0) {
+            encodeLazyBlock(context, sheet, lazyFirst);
+            return;
+        }
+
         // update column mappings on render
         sheet.updateColumnMappings();
 
-        // sort data
-        sheet.sortAndFilter();
+        // sort data, unless the view is unchanged since the last render
+        sheet.sortAndFilterIfChanged();
 
         ResponseWriter responseWriter = context.getResponseWriter();
 
@@ -225,7 +245,7 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeBadData(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
-        wb.attr("errors", StringEscapeUtils.escapeEcmaScript(sheet.getBadDataValue()));
+        wb.attr("errors", EcmaScriptEscaper.escape(sheet.getBadDataValue()));
     }
 
     /**
@@ -237,12 +257,10 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeColHeaders(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         VarBuilder vb = new VarBuilder(null, false);
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-            vb.appendArrayValue(column.getHeaderText(), true);
-        }
+        for (int col : plan.getRenderedColumns())
+            vb.appendArrayValue(plan.getColumn(col).getHeaderText(), true);
         wb.nativeAttr("colHeaders", vb.closeVar().toString());
     }
 
@@ -255,11 +273,10 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeColOptions(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         VarBuilder vb = new VarBuilder(null, false);
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-
+        for (int col : plan.getRenderedColumns()) {
+            final Column column = plan.getColumn(col);
             VarBuilder options = new VarBuilder(null, true);
             options.appendProperty("type", column.getColType(), true);
             options.appendProperty("copyable", "true", false);
@@ -274,11 +291,16 @@ public class SheetRenderer extends Renderer {
     }
 
     /**
-     * Encode the row data. Builds row data, style data and read only object.
+     * Encode the row data. Streams the data, style, row style, read only and
+     * row key arrays straight to the response writer so the payload is never
+     * held in memory as a whole.
+     * <p>
+     * When the sheet is lazy, only the first block of rows is encoded along
+     * with the total row count. The client requests further blocks as it
+     * scrolls.
      * <p>
-     * TODO figure out how to clean this up without having to iterate over data
-     * more than once and still keep it thread safe (no private member field
-     * use).
+     * With remote data, only the URL of the data resource is encoded, see
+     * {@link #encodeDataUrl}.
      * <p>
      *
      * @param context
@@ -287,79 +309,437 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeData(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        final int rowCount = sheet.getRowCount();
+        int count = rowCount;
+        if (sheet.isRemoteData() && !sheet.isLazy()) {
+            encodeDataUrl(context, sheet, wb);
+            return;
+        }
+        if (sheet.isLazy()) {
+            final int blockSize = sheet.getLazyBlockSize();
+            count = new RowBlock(0, blockSize, rowCount).getCount();
+            wb.nativeAttr("lazy", "true");
+            wb.nativeAttr("lazyBlockSize", Integer.toString(blockSize));
+            wb.nativeAttr("totalRows", Integer.toString(rowCount));
+        }
+        wb.append(",");
+        encodeRows(context, sheet, context.getResponseWriter(), 0, count);
+    }
 
-        VarBuilder vbData = new VarBuilder(null, false);
-        VarBuilder vbRowKeys = new VarBuilder(null, false);
-        VarBuilder vbStyle = new VarBuilder(null, true);
-        VarBuilder vbRowStyle = new VarBuilder(null, false);
-        VarBuilder vbReadOnly = new VarBuilder(null, true);
+    /**
+     * Encodes the URL the rows are fetched from. The rows are encoded as a
+     * JSON object and held by {@link SheetResourceHandler} under an ETag.
+     * When the sheet has a data version and no pending values, the ETag is
+     * derived from the version and the sort, filter and column state, and rows
+     * already held for it are not encoded again. Otherwise the ETag is a hash
+     * of the encoded rows.
+     *
+     * @param context
+     * @param sheet
+     * @param wb
+     * @throws IOException
+     */
+    protected void encodeDataUrl(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        String version = null;
+        final Object dataVersion = sheet.getDataVersion();
+        if (dataVersion != null && !sheet.hasPendingValues())
+            version = getDataVersionHash(context, sheet, dataVersion);
+
+        if (version == null || SheetResourceHandler.getData(context, version) == null) {
+            final StringWriter writer = new StringWriter();
+            writer.write('{');
+            encodeRows(context, sheet, writer, 0, sheet.getRowCount());
+            writer.write('}');
+            final byte[] data = writer.toString().getBytes("UTF-8");
+            if (version == null)
+                version = SheetResourceHandler.hash(data);
+            SheetResourceHandler.putData(context, version, data);
+        }
+        wb.attr("dataUrl", SheetResourceHandler.getDataUrl(context, version));
+    }
+
+    /**
+     * Hashes the data version with everything else that affects the encoded
+     * rows: the view, sort, filters, rendered columns, data format, locale and
+     * row key codec.
+     *
+     * @param context
+     * @param sheet
+     * @param dataVersion
+     * @return the hash
+     */
+    protected String getDataVersionHash(FacesContext context, Sheet sheet, Object dataVersion) {
+        final RenderPlan plan = sheet.getRenderPlan(context);
+        final StringBuilder filters = new StringBuilder();
+        for (int col : plan.getRenderedColumns())
+            filters.append(col).append('=').append(plan.getColumn(col).getFilterValue()).append(';');
+        final StringBuilder sort = new StringBuilder();
+        for (SortCriterion criterion : sheet.getSortCriteria())
+            sort.append(criterion.getSortBy().getExpressionString()).append('=').append(criterion.getSortOrder())
+                    .append(';');
+        return SheetResourceHandler.hash(dataVersion.toString(), context.getViewRoot().getViewId(),
+                sheet.getClientId(context), sort.toString(), filters.toString(), sheet.getDataFormat(),
+                String.valueOf(context.getViewRoot().getLocale()), String.valueOf(sheet.getSortLocale()),
+                sheet.getSortCollatorStrength(), plan.getRowKeyCodec().getClass().getName());
+    }
+
+    /**
+     * Encodes a block of rows requested by a lazy sheet as a javascript object
+     * holding the first row index and the row arrays for the block. The block
+     * is taken from the sorted and filtered view saved with the sheet state,
+     * so fetching it doesn't sort and filter the rows again.
+     *
+     * @param context
+     * @param sheet
+     * @param first   the first row of the block
+     * @throws IOException
+     */
+    protected void encodeLazyBlock(FacesContext context, Sheet sheet, int first) throws IOException {
+        final ResponseWriter writer = context.getResponseWriter();
+        final RowBlock block = new RowBlock(first, sheet.getLazyBlockSize(), sheet.getRowCount());
+        writer.write("{\"first\":");
+        writer.write(Integer.toString(block.getFirst()));
+        writer.write(",");
+        encodeRows(context, sheet, writer, block.getFirst(), block.getCount());
+        writer.write("}");
+    }
 
-        List<Object> values = sheet.getSortedValues();
+    /**
+     * Streams the data, styles, rowStyles, styleClasses, readOnly and rowKeys
+     * properties for the rows in the range specified. The data and rowKeys
+     * arrays are relative to the first row, the run starts in the style and
+     * read only properties are absolute row indexes.
+     * <p>
+     * The data array is written in a single pass over the rows. Styles and
+     * read only flags are written per column as runs of rows, see
+     * {@link #encodeStyleRuns} and {@link #encodeReadOnlyRuns}.
+     *
+     * @param context
+     * @param sheet
+     * @param writer  the writer to stream to
+     * @param first   the first row to encode
+     * @param count   the number of rows to encode
+     * @throws IOException
+     */
+    protected void encodeRows(FacesContext context, Sheet sheet, Writer writer, int first, int count)
+            throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
+        final List<Object> values = sheet.getSortedValues().subList(first, first + count);
+        final String[] rowKeys = new String[count];
         int row = 0;
-        for (Object value : values) {
-            context.getExternalContext().getRequestMap().put(sheet.getVar(), value);
-            final String rowKey = sheet.getRowKeyValueAsString(context);
-            vbRowKeys.appendArrayValue(rowKey, true);
-            encodeRow(context, rowKey, vbData, vbRowStyle, vbStyle, vbReadOnly, sheet, value, row);
-            row++;
+
+        writer.write("\"data\":");
+        if (Sheet.DATA_FORMAT_COLUMNAR.equalsIgnoreCase(sheet.getDataFormat())) {
+            for (Object value : values)
+                rowKeys[row++] = sheet.getRowKeyValueAsString(context, value);
+            encodeColumnarData(context, sheet, plan, writer, rowKeys);
+        } else {
+            // data is array of array of data
+            VarWriter vwData = new VarWriter(writer, false);
+            final ParallelRowEncoder parallel = sheet.isParallelEncoding()
+                    ? startParallelEncoding(context, sheet, plan, values) : null;
+            if (parallel == null) {
+                encodeRowRange(context, sheet, plan, vwData, values, rowKeys, 0, count);
+            } else {
+                try {
+                    for (int chunk = 0; chunk < parallel.getChunkCount(); chunk++) {
+                        final int start = chunk * ParallelRowEncoder.CHUNK_SIZE;
+                        if (!parallel.writeChunk(chunk, vwData, rowKeys))
+                            encodeRowRange(context, sheet, plan, vwData, values, rowKeys, start,
+                                    Math.min(start + ParallelRowEncoder.CHUNK_SIZE, count));
+                    }
+                } finally {
+                    parallel.cancel();
+                }
+            }
+            vwData.closeVar();
+        }
+
+        // styles and read only flags are written as runs of rows per column
+        final Map<String, Integer> styleClasses = new LinkedHashMap<String, Integer>();
+        writer.write(",\"styles\":");
+        VarWriter vwStyles = new VarWriter(writer, false);
+        for (int col : plan.getRenderedColumns())
+            encodeStyleRuns(context, sheet, plan, vwStyles, col, values, first, styleClasses);
+        vwStyles.closeVar();
+
+        writer.write(",\"rowStyles\":");
+        VarWriter vwRowStyles = new VarWriter(writer, false);
+        encodeStyleRuns(context, sheet, plan, vwRowStyles, ROW_STYLE, values, first, styleClasses);
+        vwRowStyles.closeVar();
+
+        writer.write(",\"styleClasses\":");
+        VarWriter vwStyleClasses = new VarWriter(writer, false);
+        for (String styleClass : styleClasses.keySet())
+            vwStyleClasses.appendArrayValue(styleClass, true);
+        vwStyleClasses.closeVar();
+
+        writer.write(",\"readOnly\":");
+        VarWriter vwReadOnly = new VarWriter(writer, false);
+        for (int col : plan.getRenderedColumns())
+            encodeReadOnlyRuns(context, sheet, plan, vwReadOnly, col, values, first);
+        vwReadOnly.closeVar();
+        sheet.setRowVar(context, null);
+
+        writer.write(",\"rowKeys\":");
+        VarWriter vwRowKeys = new VarWriter(writer, false);
+        for (String rowKey : rowKeys)
+            vwRowKeys.appendArrayValue(rowKey, true);
+        vwRowKeys.closeVar();
+    }
+
+    /**
+     * Starts encoding the rows in parallel if the sheet can be encoded this
+     * way: there must be more than one chunk of rows, no row cache, no
+     * submitted or local values, a row key index checked in this request, and
+     * the row key and the values of all rendered columns must be plain
+     * property paths. Columns whose converter is known to be none are escaped
+     * on the workers, the others are converted on the request thread.
+     *
+     * @param context
+     * @param sheet
+     * @param plan    the render plan
+     * @param values  the rows to encode
+     * @return the running encoder, or null if the rows must be encoded
+     * sequentially
+     */
+    private ParallelRowEncoder startParallelEncoding(final FacesContext context, final Sheet sheet,
+                                                     final RenderPlan plan, List<Object> values) {
+        // cached rows are cheap to encode sequentially, and the cache isn't
+        // thread safe
+        if (values.size() <= ParallelRowEncoder.CHUNK_SIZE || sheet.getValueExpression("rowVersion") != null
+                || sheet.hasPendingValues())
+            return null;
+        // rows are only looked up by key without evaluating it once the row
+        // key index is known to match the rows of this request
+        if (!sheet.isRowKeyIndexVerified(context))
+            return null;
+
+        final ValueExpression veRowKey = sheet.getValueExpression("rowKey");
+        final PropertyPath keyPath = veRowKey == null ? null : sheet.getPropertyPath(veRowKey);
+        if (keyPath == null)
+            return null;
+
+        final int[] columns = plan.getRenderedColumns();
+        final PropertyPath[] paths = new PropertyPath[columns.length];
+        final boolean[] plain = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            final ValueExpression ve = plan.getValueExpression(columns[i]);
+            paths[i] = ve == null ? null : sheet.getPropertyPath(ve);
+            if (paths[i] == null)
+                return null;
+            plain[i] = plan.getConverter(context, sheet, columns[i], values.get(0)) == null
+                    && plan.isConverterResolved(columns[i]);
         }
         sheet.setRowVar(context, null);
-        wb.nativeAttr("data", vbData.closeVar().toString());
-        wb.nativeAttr("styles", vbStyle.closeVar().toString());
-        wb.nativeAttr("rowStyles", vbRowStyle.closeVar().toString());
-        wb.nativeAttr("readOnly", vbReadOnly.closeVar().toString());
-        wb.nativeAttr("rowKeys", vbRowKeys.closeVar().toString());
+
+        final RowKeyCodec codec = plan.getRowKeyCodec();
+        final RowKeyIndex index = sheet.getRowKeyIndex();
+        final List<Object> source = sheet.getSourceRows(context);
+        final ParallelRowEncoder.RowReader reader = new ParallelRowEncoder.RowReader() {
+            public String readRowKey(Object row) {
+                final Object key = keyPath.getValue(row);
+                return key == null || key == PropertyPath.UNRESOLVED ? null : codec.encode(key);
+            }
+
+            public Object readRowData(String rowKey) {
+                final int row = index.indexOf(rowKey);
+                return row < 0 ? null : source.get(row);
+            }
+
+            public Object readCell(Object rowData, int i) {
+                return paths[i].getValue(rowData);
+            }
+        };
+        final ParallelRowEncoder.CellConverter converter = new ParallelRowEncoder.CellConverter() {
+            public String getAsString(int i, Object rowData, Object value) {
+                return sheet.getRenderString(context, columns[i], rowData, value);
+            }
+        };
+        return new ParallelRowEncoder(SheetExecutor.get(), reader, converter, plain, values);
     }
 
     /**
-     * Encode a single row.
+     * Encodes the row arrays of the rows in the range specified, on the
+     * request thread.
      *
      * @param context
-     * @param vbData
-     * @param vbRowStyle
-     * @param vbStyle
-     * @param vbReadOnly
      * @param sheet
-     * @param data
-     * @param rowIndex
+     * @param plan    the render plan
+     * @param vwData  the data array to append the rows to
+     * @param values  the rows
+     * @param rowKeys the array receiving the row key of each row
+     * @param start   the index of the first row in values
+     * @param end     the index after the last row in values
      * @throws IOException
      */
-    protected void encodeRow(FacesContext context, String rowKey, VarBuilder vbData, VarBuilder vbRowStyle,
-                             VarBuilder vbStyle, VarBuilder vbReadOnly, Sheet sheet, Object data, int rowIndex) throws IOException {
+    private void encodeRowRange(FacesContext context, Sheet sheet, RenderPlan plan, VarWriter vwData,
+                                List<Object> values, String[] rowKeys, int start, int end) throws IOException {
+        for (int row = start; row < end; row++) {
+            rowKeys[row] = sheet.getRowKeyValueAsString(context, values.get(row));
+            encodeRow(context, rowKeys[row], vwData, sheet, plan);
+        }
+    }
 
-        // encode rowStyle (if any)
-        String rowStyleClass = sheet.getRowStyleClass();
-        if (rowStyleClass == null)
-            vbRowStyle.appendArrayValue("null", false);
-        else
-            vbRowStyle.appendArrayValue(rowStyleClass, true);
+    /**
+     * Encodes the data for the rows specified column by column, each column
+     * either as plain values or dictionary encoded, see
+     * {@link ColumnarWriter}. The client expands rows from the columns as
+     * they are accessed.
+     *
+     * @param context
+     * @param sheet
+     * @param plan    the render plan
+     * @param writer
+     * @param rowKeys the keys of the rows to encode
+     * @throws IOException
+     */
+    protected void encodeColumnarData(FacesContext context, Sheet sheet, RenderPlan plan, Writer writer,
+                                      String[] rowKeys) throws IOException {
+        final ColumnarWriter columnar = new ColumnarWriter(writer, rowKeys.length);
+        final String[] cells = new String[rowKeys.length];
+        // with a row cache the cells are fetched (and cached) a row at a time
+        String[][] cachedRows = null;
+        if (sheet.getValueExpression("rowVersion") != null) {
+            cachedRows = new String[rowKeys.length][];
+            for (int row = 0; row < rowKeys.length; row++)
+                cachedRows[row] = sheet.getRenderValuesForRow(context, rowKeys[row]);
+        }
+        final int[] renderedColumns = plan.getRenderedColumns();
+        for (int renderIdx = 0; renderIdx < renderedColumns.length; renderIdx++) {
+            final int col = renderedColumns[renderIdx];
+            for (int row = 0; row < rowKeys.length; row++)
+                cells[row] = cachedRows == null ? sheet.getRenderValueForCell(context, rowKeys[row], col)
+                        : cachedRows[row][renderIdx];
+            columnar.appendColumn(cells);
+        }
+        columnar.close();
+    }
 
-        // data is array of array of data
-        VarBuilder vbRow = new VarBuilder(null, false);
-        int renderCol = 0;
-        for (int col = 0; col < sheet.getColumns().size(); col++) {
-            final Column column = sheet.getColumns().get(col);
-            if (!column.isRendered())
-                continue;
+    /**
+     * Appends the style class runs of the component specified (the column
+     * styleClass, or the rowStyleClass when given the sheet) as the next
+     * value of the array.
+     * The value is null when no row is styled, otherwise a flat array of
+     * start,length,styleIndex triples where styleIndex refers to the style
+     * class dictionary. Literal style classes are a single run and are not
+     * evaluated per row.
+     *
+     * @param context
+     * @param sheet
+     * @param plan         the render plan
+     * @param vw           the array to append to
+     * @param col          the real column index, or {@link #ROW_STYLE}
+     * @param values       the rows to encode
+     * @param first        the row index of the first value
+     * @param styleClasses the style class dictionary
+     * @throws IOException
+     */
+    protected void encodeStyleRuns(FacesContext context, Sheet sheet, RenderPlan plan, VarWriter vw, int col,
+                                   List<Object> values, int first, Map<String, Integer> styleClasses)
+            throws IOException {
+        final boolean rowStyle = col == ROW_STYLE;
+        final boolean literal = rowStyle ? plan.isRowStyleClassLiteral() : plan.isStyleClassLiteral(col);
+        String styleClass = rowStyle ? plan.getRowStyleClass() : plan.getStyleClass(col);
+        if (literal && styleClass == null) {
+            vw.appendArrayValue("null", false);
+            return;
+        }
+
+        VarWriter vwRuns = vw.openArray();
+        RunLengthWriter runs = new RunLengthWriter(vwRuns, true);
+        if (literal) {
+            runs.appendRun(first, values.size(), getStyleIndex(styleClasses, styleClass));
+        } else {
+            final Map<String, Object> requestMap = context.getExternalContext().getRequestMap();
+            final String var = sheet.getVar();
+            final Column column = rowStyle ? null : plan.getColumn(col);
+            int row = first;
+            for (Object value : values) {
+                requestMap.put(var, value);
+                styleClass = rowStyle ? sheet.getRowStyleClass() : column.getStyleClass();
+                runs.append(row++, styleClass == null ? RunLengthWriter.NONE : getStyleIndex(styleClasses,
+                        styleClass));
+            }
+        }
+        runs.flush();
+        vwRuns.closeVar();
+    }
 
-            // render data value
-            String value = sheet.getRenderValueForCell(context, rowKey, col);
-            vbRow.appendArrayValue(value, true);
+    /**
+     * Appends the read only runs for the column as the next value of the
+     * array. The value is null when no cell is flagged read only, otherwise a
+     * flat array of start,length pairs.
+     *
+     * @param context
+     * @param sheet
+     * @param plan    the render plan
+     * @param vw      the array to append to
+     * @param col     the real column index
+     * @param values  the rows to encode
+     * @param first   the row index of the first value
+     * @throws IOException
+     */
+    protected void encodeReadOnlyRuns(FacesContext context, Sheet sheet, RenderPlan plan, VarWriter vw, int col,
+                                      List<Object> values, int first) throws IOException {
+        final boolean literal = plan.isReadonlyCellLiteral(col);
+        if (literal && !plan.isReadonlyCell(col)) {
+            vw.appendArrayValue("null", false);
+            return;
+        }
 
-            // custom style
-            String styleClass = column.getStyleClass();
-            if (styleClass != null) {
-                vbStyle.appendRowColProperty(rowIndex, renderCol, styleClass, true);
+        VarWriter vwRuns = vw.openArray();
+        RunLengthWriter runs = new RunLengthWriter(vwRuns, false);
+        if (literal) {
+            runs.appendRun(first, values.size(), 0);
+        } else {
+            final Map<String, Object> requestMap = context.getExternalContext().getRequestMap();
+            final String var = sheet.getVar();
+            final Column column = plan.getColumn(col);
+            int row = first;
+            for (Object value : values) {
+                requestMap.put(var, value);
+                runs.append(row++, column.isReadonlyCell() ? 0 : RunLengthWriter.NONE);
             }
+        }
+        runs.flush();
+        vwRuns.closeVar();
+    }
 
-            // read only per cell
-            boolean readOnly = column.isReadonlyCell();
-            if (readOnly)
-                vbReadOnly.appendRowColProperty(rowIndex, renderCol, "true", true);
-            renderCol++;
+    /**
+     * Returns the index of the style class in the dictionary, adding it if
+     * needed.
+     *
+     * @param styleClasses the dictionary
+     * @param styleClass   the style class
+     * @return the index
+     */
+    private int getStyleIndex(Map<String, Integer> styleClasses, String styleClass) {
+        Integer index = styleClasses.get(styleClass);
+        if (index == null) {
+            index = styleClasses.size();
+            styleClasses.put(styleClass, index);
         }
-        // close row and append to vbData
-        vbData.appendArrayValue(vbRow.closeVar().toString(), false);
+        return index;
+    }
+
+    /**
+     * Encode a single row of data values.
+     *
+     * @param context
+     * @param rowKey
+     * @param vwData
+     * @param sheet
+     * @param plan   the render plan
+     * @throws IOException
+     */
+    protected void encodeRow(FacesContext context, String rowKey, VarWriter vwData, Sheet sheet, RenderPlan plan)
+            throws IOException {
+        // data is array of array of data
+        VarWriter vwRow = vwData.openArray();
+        for (String value : sheet.getRenderValuesForRow(context, rowKey))
+            vwRow.appendArrayValue(value, true);
+        vwRow.closeVar();
     }
 
     /**
@@ -399,20 +779,31 @@ public class SheetRenderer extends Renderer {
             responseWriter.writeAttribute("value", sheet.getSelection(), null);
         responseWriter.endElement("input");
 
-        // sort col and order if specified and supported
-        int sortCol = sheet.getSortColRenderIndex();
+        // sort cols and orders if specified and supported, comma separated
+        // with the secondary sort criteria following the sortBy column
+        final StringBuilder sortCols = new StringBuilder();
+        final StringBuilder sortOrders = new StringBuilder();
+        sortCols.append(sheet.getSortColRenderIndex());
+        sortOrders.append(sheet.getSortOrder().toLowerCase());
+        for (SortCriterion criterion : sheet.getSecondarySort()) {
+            final int sortCol = sheet.getSortColRenderIndex(criterion.getSortBy());
+            if (sortCol < 0)
+                continue;
+            sortCols.append(',').append(sortCol);
+            sortOrders.append(',').append(criterion.getSortOrder().toLowerCase());
+        }
         responseWriter.startElement("input", null);
         responseWriter.writeAttribute("id", clientId + "_sortby", "id");
         responseWriter.writeAttribute("name", clientId + "_sortby", "name");
         responseWriter.writeAttribute("type", "hidden", null);
-        responseWriter.writeAttribute("value", sortCol, null);
+        responseWriter.writeAttribute("value", sortCols.toString(), null);
         responseWriter.endElement("input");
 
         responseWriter.startElement("input", null);
         responseWriter.writeAttribute("id", clientId + "_sortorder", "id");
         responseWriter.writeAttribute("name", clientId + "_sortorder", "name");
         responseWriter.writeAttribute("type", "hidden", null);
-        responseWriter.writeAttribute("value", sheet.getSortOrder().toLowerCase(), null);
+        responseWriter.writeAttribute("value", sortOrders.toString(), null);
         responseWriter.endElement("input");
     }
 
@@ -522,11 +913,10 @@ public class SheetRenderer extends Renderer {
      */
     protected void encodeFilterValues(FacesContext context, ResponseWriter responseWriter, Sheet sheet, String clientId)
             throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         int renderIdx = 0;
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-
+        for (int col : plan.getRenderedColumns()) {
+            final Column column = plan.getColumn(col);
             if (column.getValueExpression("filterBy") != null) {
                 responseWriter.startElement("input", null);
                 responseWriter.writeAttribute("id", clientId + "_filter_" + renderIdx, "id");
@@ -559,12 +949,11 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeFilterVar(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         VarBuilder vb = new VarBuilder(null, false);
 
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-
+        for (int col : plan.getRenderedColumns()) {
+            final Column column = plan.getColumn(col);
             if (column.getValueExpression("filterBy") == null) {
                 vb.appendArrayValue("false", true);
                 continue;
@@ -598,13 +987,11 @@ public class SheetRenderer extends Renderer {
      * @throws IOException
      */
     protected void encodeSortVar(FacesContext context, Sheet sheet, WidgetBuilder wb) throws IOException {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         VarBuilder vb = new VarBuilder(null, false);
 
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-
-            if (column.getValueExpression("sortBy") == null)
+        for (int col : plan.getRenderedColumns()) {
+            if (plan.getColumn(col).getValueExpression("sortBy") == null)
                 vb.appendArrayValue("false", false);
             else
                 vb.appendArrayValue("true", false);
@@ -658,21 +1045,46 @@ public class SheetRenderer extends Renderer {
         // decode filters
         decodeFilters(context, sheet, params, clientId);
 
-        String sortBy = params.get(clientId + "_sortby");
-        String sortOrder = params.get(clientId + "_sortorder");
+        decodeSort(sheet, params.get(clientId + "_sortby"), params.get(clientId + "_sortorder"));
+
+        String focus = params.get(clientId + "_focus");
+        sheet.setFocusId(focus);
+    }
+
+    /**
+     * Decodes the sort columns and orders. Both are comma separated lists,
+     * the first entry being the sortBy column and the rest the secondary sort
+     * criteria in order.
+     *
+     * @param sheet
+     * @param sortBy    the rendered indexes of the sort columns
+     * @param sortOrder the sort orders
+     */
+    protected void decodeSort(Sheet sheet, String sortBy, String sortOrder) {
+        final String[] orders = sortOrder == null ? new String[0] : sortOrder.split(",");
         if (sortBy != null) {
-            int col = Integer.valueOf(sortBy);
+            final String[] cols = sortBy.split(",");
+            int col = Integer.valueOf(cols[0].trim());
             if (col >= 0) {
                 col = sheet.getMappedColumn(col);
                 sheet.setSortByValueExpression(sheet.getColumns().get(col).getValueExpression("sortBy"));
             }
-        }
 
-        if (sortOrder != null)
-            sheet.setSortOrder(sortOrder);
+            final List<SortCriterion> secondary = new ArrayList<SortCriterion>();
+            for (int i = 1; i < cols.length; i++) {
+                col = Integer.valueOf(cols[i].trim());
+                if (col < 0)
+                    continue;
+                final ValueExpression veSortBy = sheet.getColumns().get(sheet.getMappedColumn(col))
+                        .getValueExpression("sortBy");
+                if (veSortBy != null)
+                    secondary.add(new SortCriterion(veSortBy, i < orders.length ? orders[i].trim() : "ascending"));
+            }
+            sheet.setSecondarySort(secondary);
+        }
 
-        String focus = params.get(clientId + "_focus");
-        sheet.setFocusId(focus);
+        if (orders.length > 0)
+            sheet.setSortOrder(orders[0].trim());
     }
 
     /**
@@ -684,11 +1096,10 @@ public class SheetRenderer extends Renderer {
      * @param clientId
      */
     protected void decodeFilters(FacesContext context, Sheet sheet, Map<String, String> params, String clientId) {
+        final RenderPlan plan = sheet.getRenderPlan(context);
         int renderIdx = 0;
-        for (Column column : sheet.getColumns()) {
-            if (!column.isRendered())
-                continue;
-
+        for (int col : plan.getRenderedColumns()) {
+            final Column column = plan.getColumn(col);
             if (column.getValueExpression("filterBy") != null) {
                 String value = params.get(clientId + "_filter_" + renderIdx);
                 column.setFilterValue(value);
@@ -762,13 +1173,15 @@ public class SheetRenderer extends Renderer {
 
     /**
      * Converts the JSON data received from the in the request params into our
-     * sumitted values map. The map is cleared first.
+     * sumitted values map. The changes are set as submitted values once the
+     * whole payload was read, so a malformed or oversized payload applies no
+     * changes.
      *
-     * @param jsonData the submitted JSON data
+     * @param context
      * @param sheet
-     * @param jsonData
+     * @param jsonData the submitted JSON data
      */
-    private void decodeSubmittedValues(FacesContext context, Sheet sheet, String jsonData) {
+    private void decodeSubmittedValues(final FacesContext context, final Sheet sheet, String jsonData) {
         if (StringUtils.isEmpty(jsonData))
             return;
 
@@ -778,20 +1191,13 @@ public class SheetRenderer extends Renderer {
             // this is so that multiple updates to the same cell overwrite
             // previous deltas prior to submission
             // we don't care about the property names, just the values, which
-            // we'll process in turn
-            JSONObject obj = new JSONObject(jsonData);
-            @SuppressWarnings("unchecked")
-            Iterator<String> keys = obj.keys();
-            while (keys.hasNext()) {
-                final String key = keys.next();
-                // data comes in: [row, col, oldValue, newValue, rowKey]
-                JSONArray update = obj.getJSONArray(key);
-                final String rowKey = update.getString(4);
-                final int col = sheet.getMappedColumn(update.getInt(1));
-                final String newValue = update.getString(3);
-                sheet.setSubmittedValue(context, rowKey, col, newValue);
-            }
-        } catch (JSONException e) {
+            // we'll process in turn: [row, col, oldValue, newValue, rowKey]
+            new CellDeltaReader().read(jsonData, new CellDeltaReader.Handler() {
+                public void cell(String rowKey, int col, String newValue) {
+                    sheet.setSubmittedValue(context, rowKey, sheet.getMappedColumn(col), newValue);
+                }
+            });
+        } catch (IllegalArgumentException e) {
             LOG.error("Failed parsing Ajax JSON message for cell change event: {}", e.getMessage(), e);
         }
     }
@@ -821,6 +1227,17 @@ public class SheetRenderer extends Renderer {
         writer.endElement("script");
     }
 
+    /**
+     * Columns are rendered as part of the sheet data. Nothing but the row
+     * block may be written for lazy block requests.
+     */
+    @Override
+    public void encodeChildren(FacesContext context, UIComponent component) throws IOException {
+        if (((Sheet) component).getLazyFetchFirst(context) >= 0)
+            return;
+        super.encodeChildren(context, component);
+    }
+
     /**
      * We render the columns (the children).
      */
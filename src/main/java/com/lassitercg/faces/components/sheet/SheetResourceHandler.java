@@ -0,0 +1,165 @@
+package com.lassitercg.faces.components.sheet;
+
+import javax.faces.application.ResourceHandler;
+import javax.faces.application.ResourceHandlerWrapper;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Resource handler serving the row data of sheets with remote data enabled.
+ * The rows are encoded as JSON when the sheet renders and held in the session
+ * by their ETag; the data resource streams them without running the JSF
+ * lifecycle. The ETag is part of the data URL, so a request carrying a
+ * matching If-None-Match header is answered with a 304 even if the data is no
+ * longer held in the session. The data held per session is bounded by size,
+ * see {@link DataCache}.
+ * <p>
+ * Registered in the faces-config of the library.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class SheetResourceHandler extends ResourceHandlerWrapper {
+
+    /**
+     * The resource library of the data resource.
+     */
+    public static final String LIBRARY = "jsfsheet";
+
+    /**
+     * The resource name of the data resource.
+     */
+    public static final String DATA_RESOURCE = "sheetdata";
+
+    /**
+     * The session attribute holding the encoded data.
+     */
+    private static final String SESSION_KEY = SheetResourceHandler.class.getName() + ".cache";
+
+    /**
+     * The maximum total size of the data held per session, in bytes.
+     */
+    public static final long MAX_BYTES = 8L * 1024 * 1024;
+
+    private final ResourceHandler wrapped;
+
+    public SheetResourceHandler(ResourceHandler wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public ResourceHandler getWrapped() {
+        return wrapped;
+    }
+
+    /**
+     * Serves the data resource, anything else is passed on to the wrapped
+     * handler.
+     */
+    @Override
+    public void handleResourceRequest(FacesContext context) throws IOException {
+        final ExternalContext externalContext = context.getExternalContext();
+        final DataRequest request = DataRequest.parse(externalContext.getRequestServletPath(),
+                externalContext.getRequestPathInfo(), externalContext.getRequestParameterMap());
+        if (request == null) {
+            super.handleResourceRequest(context);
+            return;
+        }
+
+        externalContext.setResponseHeader("ETag", request.getETag());
+        externalContext.setResponseHeader("Cache-Control", "private, no-cache");
+        if (request.isNotModified(externalContext.getRequestHeaderMap().get("If-None-Match"))) {
+            externalContext.setResponseStatus(304);
+            context.responseComplete();
+            return;
+        }
+
+        final byte[] data = getData(context, request.getVersion());
+        if (data == null) {
+            externalContext.responseSendError(404, "Sheet data not found");
+        } else {
+            externalContext.setResponseContentType("application/json; charset=UTF-8");
+            externalContext.setResponseContentLength(data.length);
+            externalContext.getResponseOutputStream().write(data);
+        }
+        context.responseComplete();
+    }
+
+    /**
+     * Gets the encoded data held for the version specified.
+     *
+     * @param context the faces context
+     * @param version the data version (ETag)
+     * @return the data or null if not held in the session
+     */
+    public static byte[] getData(FacesContext context, String version) {
+        if (context.getExternalContext().getSession(false) == null)
+            return null;
+        return getCache(context).get(version);
+    }
+
+    /**
+     * Holds the encoded data in the session for the version specified.
+     *
+     * @param context the faces context
+     * @param version the data version (ETag)
+     * @param data    the encoded data
+     */
+    public static void putData(FacesContext context, String version, byte[] data) {
+        getCache(context).put(version, data);
+    }
+
+    /**
+     * Gets the URL of the data resource for the version specified, taking the
+     * prefix or suffix mapping of the current request into account.
+     *
+     * @param context the faces context
+     * @param version the data version (ETag)
+     * @return the URL
+     */
+    public static String getDataUrl(FacesContext context, String version) {
+        final ExternalContext externalContext = context.getExternalContext();
+        String path = ResourceHandler.RESOURCE_IDENTIFIER + "/" + DATA_RESOURCE;
+        final String servletPath = externalContext.getRequestServletPath();
+        if (externalContext.getRequestPathInfo() != null) {
+            path = servletPath + path;
+        } else {
+            final int dot = servletPath.lastIndexOf('.');
+            if (dot >= 0)
+                path = path + servletPath.substring(dot);
+        }
+        path = path + "?ln=" + LIBRARY + "&v=" + version;
+        return externalContext.encodeResourceURL(context.getApplication().getViewHandler()
+                .getResourceURL(context, path));
+    }
+
+    /**
+     * Hashes the parts into a hex string suitable as an ETag.
+     *
+     * @param parts the parts to hash
+     * @return the hash
+     */
+    public static String hash(String... parts) {
+        return ViewKey.hash(parts);
+    }
+
+    /**
+     * Hashes the data into a hex string suitable as an ETag.
+     *
+     * @param data the data to hash
+     * @return the hash
+     */
+    public static String hash(byte[] data) {
+        return ViewKey.hash(data);
+    }
+
+    private static DataCache getCache(FacesContext context) {
+        final Map<String, Object> sessionMap = context.getExternalContext().getSessionMap();
+        final DataCache cache = (DataCache) sessionMap.get(SESSION_KEY);
+        if (cache != null)
+            return cache;
+        return (DataCache) SessionLru.putIfAbsent(sessionMap, Sheet.getSessionMutex(context), SESSION_KEY,
+                new DataCache(MAX_BYTES));
+    }
+}
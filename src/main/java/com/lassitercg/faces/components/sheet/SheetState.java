@@ -0,0 +1,60 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.List;
+
+/**
+ * Builds the saved state of the custom fields of a sheet. With partial state
+ * saving, the state is saved relative to the initial state of the view, the
+ * freshly built sheet, in which these fields are all empty: empty fields are
+ * left out, and a sheet without anything to save saves null.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public final class SheetState {
+
+    /**
+     * The number of values in the state array.
+     */
+    public static final int SIZE = 6;
+
+    private SheetState() {
+    }
+
+    /**
+     * Builds the state array: the state of the input, the submitted values,
+     * the local values, the bad updates, the column mapping and the view.
+     *
+     * @param delta           true if saving relative to the initial state
+     * @param inputState      the saved state of the input
+     * @param submittedValues the submitted values
+     * @param localValues     the local values
+     * @param badUpdates      the bad updates, or null
+     * @param columnMapping   the rendered columns, or null if not rendered yet
+     * @param columnsFixed    true if no column has a rendered expression, so
+     *                        decode maps the columns the same way again and
+     *                        the column mapping is left out
+     * @param view            the sorted and filtered view, or null if it's not
+     *                        kept in the view state
+     * @return the state, or null if saving relative to the initial state and
+     * there is nothing to save
+     */
+    public static Object[] save(boolean delta, Object inputState, CellMap<String> submittedValues,
+                                CellMap<Object> localValues, List<BadUpdate> badUpdates, int[] columnMapping,
+                                boolean columnsFixed, ViewCache view) {
+        final Object[] values = new Object[SIZE];
+        values[0] = inputState;
+        values[1] = delta && submittedValues.isEmpty() ? null : submittedValues;
+        values[2] = delta && localValues.isEmpty() ? null : localValues;
+        values[3] = delta && (badUpdates == null || badUpdates.isEmpty()) ? null : badUpdates;
+        values[4] = columnsFixed ? null : columnMapping;
+        values[5] = view;
+        if (delta) {
+            for (final Object value : values) {
+                if (value != null)
+                    return values;
+            }
+            return null;
+        }
+        return values;
+    }
+}
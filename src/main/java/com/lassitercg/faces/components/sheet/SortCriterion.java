@@ -0,0 +1,57 @@
+package com.lassitercg.faces.components.sheet;
+
+import javax.el.ValueExpression;
+import java.io.Serializable;
+
+/**
+ * One level of a multi-column sort: the sortBy expression of a column and the
+ * direction it is sorted in.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class SortCriterion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ValueExpression sortBy;
+
+    private final String sortOrder;
+
+    /**
+     * Creates the criterion.
+     *
+     * @param sortBy    the sort by expression
+     * @param sortOrder the sort direction, ascending or descending
+     */
+    public SortCriterion(ValueExpression sortBy, String sortOrder) {
+        this.sortBy = sortBy;
+        this.sortOrder = sortOrder;
+    }
+
+    /**
+     * The sort by expression.
+     *
+     * @return
+     */
+    public ValueExpression getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * The sort direction, ascending or descending.
+     *
+     * @return
+     */
+    public String getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * True if sorting ascending. Any other direction sorts descending.
+     *
+     * @return
+     */
+    public boolean isAscending() {
+        return "ascending".equalsIgnoreCase(sortOrder);
+    }
+}
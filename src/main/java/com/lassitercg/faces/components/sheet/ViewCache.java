@@ -0,0 +1,123 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A sorted and filtered view of the data of a sheet and the row key index it
+ * refers to, held in the session rather than in the view state. Views are
+ * looked up by the view key they were built for (see {@link ViewKey}), which
+ * includes the data version, so any view of a page with the same key may
+ * reuse them.
+ * <p>
+ * The session holds the most recently used views only, a view that was
+ * dropped is sorted and filtered again. Views are never modified, an updated
+ * view replaces the previous one.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ViewCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of views held per session.
+     */
+    public static final int MAX_VIEWS = 8;
+
+    private static final String SESSION_KEY = ViewCache.class.getName();
+
+    private final int[] sortedRows;
+
+    private final RowKeyIndex rowKeyIndex;
+
+    private final boolean sortedWithNullKeys;
+
+    /**
+     * Creates a view.
+     *
+     * @param sortedRows         the indexes of the rows of the view in the
+     *                           source list
+     * @param rowKeyIndex        the row key index of the source list
+     * @param sortedWithNullKeys true if some sort key of the rows was null
+     */
+    public ViewCache(int[] sortedRows, RowKeyIndex rowKeyIndex, boolean sortedWithNullKeys) {
+        this.sortedRows = sortedRows;
+        this.rowKeyIndex = rowKeyIndex;
+        this.sortedWithNullKeys = sortedWithNullKeys;
+    }
+
+    /**
+     * Gets the view held for the key.
+     *
+     * @param sessionMap the session map
+     * @param key        identifies the sheet and its view key
+     * @return the view, or null if there is none
+     */
+    public static ViewCache get(Map<String, Object> sessionMap, String key) {
+        final SessionLru<ViewCache> views = SessionLru.get(sessionMap, null, SESSION_KEY, MAX_VIEWS, false);
+        if (views == null)
+            return null;
+        synchronized (views) {
+            return views.get(key);
+        }
+    }
+
+    /**
+     * Holds the view for the key, replacing any other view held for it.
+     *
+     * @param sessionMap the session map
+     * @param mutex      the lock of the session
+     * @param key        identifies the sheet and its view key
+     * @param view       the view
+     */
+    public static void put(Map<String, Object> sessionMap, Object mutex, String key, ViewCache view) {
+        final SessionLru<ViewCache> views = SessionLru.get(sessionMap, mutex, SESSION_KEY, MAX_VIEWS, true);
+        synchronized (views) {
+            views.put(key, view);
+        }
+    }
+
+    /**
+     * Drops the view held for the key, if any.
+     *
+     * @param sessionMap the session map
+     * @param key        identifies the sheet and its view key
+     */
+    public static void remove(Map<String, Object> sessionMap, String key) {
+        final SessionLru<ViewCache> views = SessionLru.get(sessionMap, null, SESSION_KEY, MAX_VIEWS, false);
+        if (views == null)
+            return;
+        synchronized (views) {
+            views.remove(key);
+        }
+    }
+
+    /**
+     * The indexes of the rows of the view in the source list, not to be
+     * modified.
+     *
+     * @return
+     */
+    public int[] getSortedRows() {
+        return sortedRows;
+    }
+
+    /**
+     * The row key index of the source list.
+     *
+     * @return
+     */
+    public RowKeyIndex getRowKeyIndex() {
+        return rowKeyIndex;
+    }
+
+    /**
+     * True if some sort key of the rows was null.
+     *
+     * @return
+     */
+    public boolean isSortedWithNullKeys() {
+        return sortedWithNullKeys;
+    }
+}
@@ -0,0 +1,135 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Builds the key identifying a sorted and filtered view of the data of a
+ * sheet: the data version, the sort criteria and collation, the filter of
+ * each column and the row key codec. Views with the same key have the same
+ * rows in the same order, so a view built for a key can be reused while the
+ * key doesn't change.
+ * <p>
+ * Also hashes strings and data into hex strings suitable as ETags.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ViewKey {
+
+    private final String dataVersion;
+
+    private final StringBuilder sort = new StringBuilder();
+
+    private final StringBuilder filters = new StringBuilder();
+
+    private String collation = "";
+
+    private String codec = "";
+
+    /**
+     * Starts the key of a view of the data version specified.
+     *
+     * @param dataVersion the data version, not null
+     */
+    public ViewKey(Object dataVersion) {
+        this.dataVersion = dataVersion.toString();
+    }
+
+    /**
+     * Adds the next sort criterion.
+     *
+     * @param sortBy    the sortBy expression string
+     * @param sortOrder the sort order
+     * @return this key
+     */
+    public ViewKey sortBy(String sortBy, Object sortOrder) {
+        sort.append(sortBy).append('=').append(sortOrder).append(';');
+        return this;
+    }
+
+    /**
+     * Adds the filter of a column.
+     *
+     * @param column      the column index
+     * @param matchMode   the filter match mode
+     * @param filterBy    the filterBy expression string, or the literal filterBy
+     *                    value
+     * @param filterValue the filter value
+     * @return this key
+     */
+    public ViewKey filter(int column, String matchMode, Object filterBy, String filterValue) {
+        filters.append(column).append(':').append(matchMode).append(':').append(filterBy).append('=')
+                .append(filterValue).append(';');
+        return this;
+    }
+
+    /**
+     * Sets the collation of the sort.
+     *
+     * @param locale   the sort locale
+     * @param strength the collator strength
+     * @return this key
+     */
+    public ViewKey collation(Locale locale, String strength) {
+        collation = locale + "/" + strength;
+        return this;
+    }
+
+    /**
+     * Sets the row key codec. Codecs are told apart by their class, so an
+     * equal codec restored or created in a later request has the same key.
+     *
+     * @param codec the codec
+     * @return this key
+     */
+    public ViewKey codec(RowKeyCodec codec) {
+        this.codec = codec == null ? "" : codec.getClass().getName();
+        return this;
+    }
+
+    /**
+     * The key.
+     *
+     * @return the hash of everything added
+     */
+    public String getKey() {
+        return hash(dataVersion, sort.toString(), filters.toString(), collation, codec);
+    }
+
+    /**
+     * Hashes the parts into a hex string suitable as an ETag.
+     *
+     * @param parts the parts to hash
+     * @return the hash
+     */
+    public static String hash(String... parts) {
+        final StringBuilder sb = new StringBuilder();
+        for (String part : parts)
+            sb.append(part == null ? "" : part.replace("\\", "\\\\").replace("|", "\\|")).append('|');
+        try {
+            return hash(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the data into a hex string suitable as an ETag.
+     *
+     * @param data the data to hash
+     * @return the hash
+     */
+    public static String hash(byte[] data) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.lassitercg.faces.components.sheet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Updates a sorted and filtered view of the rows of a sheet for rows whose
+ * values changed, with the same result as filtering and sorting all rows
+ * again: the changed rows are checked against the filters again and moved to
+ * their sorted position, the other rows are left as they are.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ViewUpdater {
+
+    /**
+     * Reads the rows of the view.
+     */
+    public interface Rows extends RowSorter.KeySource {
+
+        /**
+         * True if the row matches the filters.
+         *
+         * @param row the row index
+         * @return
+         */
+        boolean matches(int row);
+    }
+
+    private final RowSorter sorter;
+
+    private final boolean[] ascending;
+
+    /**
+     * Creates an updater for an unsorted view, which is in row index order.
+     */
+    public ViewUpdater() {
+        this(null, null);
+    }
+
+    /**
+     * Creates an updater for a view sorted by
+     * {@link RowSorter#sort(int[], Object[][], boolean[], boolean)} without
+     * null keys.
+     *
+     * @param sorter    the sorter the view was sorted with
+     * @param ascending per criterion, true if sorting ascending
+     */
+    public ViewUpdater(RowSorter sorter, boolean[] ascending) {
+        this.sorter = sorter;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Updates the view.
+     *
+     * @param view    the row indexes of the view, not modified
+     * @param changed the indexes of the changed rows
+     * @param rows    reads the rows
+     * @return the updated view, or null if it must be rebuilt
+     */
+    public int[] update(int[] view, BitSet changed, Rows rows) {
+        final int[] result = Arrays.copyOf(view, view.length + changed.cardinality());
+        // drop the changed rows, unsorted rows still matching stay put
+        final BitSet present = new BitSet();
+        int size = 0;
+        for (final int row : view) {
+            if (changed.get(row)) {
+                present.set(row);
+                if (sorter != null || !rows.matches(row))
+                    continue;
+            }
+            result[size++] = row;
+        }
+
+        if (sorter == null) {
+            // unsorted rows are in index order, rows now matching the filter
+            // are merged in at their index
+            final int[] added = new int[changed.cardinality()];
+            int count = 0;
+            for (int row = changed.nextSetBit(0); row >= 0; row = changed.nextSetBit(row + 1)) {
+                if (!present.get(row) && rows.matches(row))
+                    added[count++] = row;
+            }
+            // merge from the end, the result has room for the added rows
+            int next = size + count;
+            int last = size - 1;
+            for (int i = count - 1; i >= 0; i--) {
+                while (last >= 0 && result[last] > added[i])
+                    result[--next] = result[last--];
+                result[--next] = added[i];
+            }
+            size += count;
+        } else {
+            for (int row = changed.nextSetBit(0); row >= 0; row = changed.nextSetBit(row + 1)) {
+                if (!rows.matches(row))
+                    continue;
+                final int position = sorter.getInsertionPoint(result, size, row, ascending, rows);
+                if (position < 0)
+                    return null;
+                System.arraycopy(result, position, result, position + 1, size - position);
+                result[position] = row;
+                size++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+}
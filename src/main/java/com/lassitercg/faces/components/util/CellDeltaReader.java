@@ -0,0 +1,317 @@
+package com.lassitercg.faces.components.util;
+
+import java.util.Arrays;
+
+/**
+ * Reads the cell changes submitted by the sheet widget, a JSON object with a
+ * property per changed cell whose value is the array
+ * <code>[row, col, oldValue, newValue, rowKey]</code>. The text is tokenized
+ * in a single pass into arrays of the row keys, columns and new values, so no
+ * object tree is built for the payload. Strings without escapes are taken as
+ * substrings of the payload.
+ * <p>
+ * A payload longer than the maximum length is rejected before it is read,
+ * and reading stops at the first syntax error or when there are more changes
+ * than allowed. The changes are handed to the handler only once the whole
+ * payload was read, so a rejected payload applies none. The new value is
+ * passed as its string value: JSON strings unescaped, numbers and booleans as
+ * written, null as null.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class CellDeltaReader {
+
+    /**
+     * The default maximum payload length, in chars.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * The default maximum number of changes.
+     */
+    public static final int DEFAULT_MAX_CELLS = 100000;
+
+    /**
+     * Receives the changes read.
+     */
+    public interface Handler {
+
+        /**
+         * A changed cell.
+         *
+         * @param rowKey   the row key
+         * @param col      the rendered column index
+         * @param newValue the new value, may be null
+         */
+        void cell(String rowKey, int col, String newValue);
+    }
+
+    private final int maxLength;
+
+    private final int maxCells;
+
+    private String text;
+
+    private int pos;
+
+    private String[] rowKeys;
+
+    private int[] cols;
+
+    private String[] newValues;
+
+    private int count;
+
+    /**
+     * Creates a reader with the default limits.
+     */
+    public CellDeltaReader() {
+        this(DEFAULT_MAX_LENGTH, DEFAULT_MAX_CELLS);
+    }
+
+    /**
+     * Creates a reader with the limits specified.
+     *
+     * @param maxLength the maximum payload length, in chars
+     * @param maxCells  the maximum number of changes
+     */
+    public CellDeltaReader(int maxLength, int maxCells) {
+        this.maxLength = maxLength;
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Reads the changes of the payload.
+     *
+     * @param json    the payload
+     * @param handler receives each change once all were read
+     * @return the number of changes read
+     * @throws IllegalArgumentException if the payload is too large or
+     *                                  malformed
+     */
+    public int read(String json, Handler handler) {
+        if (json.length() > maxLength)
+            throw new IllegalArgumentException("Cell changes of " + json.length() + " chars exceed the maximum of "
+                    + maxLength);
+        text = json;
+        pos = 0;
+        count = 0;
+        try {
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    if (count == maxCells)
+                        throw error("More than " + maxCells + " cell changes");
+                    // the property names only keep the last change per cell
+                    readString(false);
+                    expect(':');
+                    readChange();
+                } while (consume(','));
+                expect('}');
+            }
+            skipWhitespace();
+            if (pos < text.length())
+                throw error("Unexpected content");
+            for (int i = 0; i < count; i++)
+                handler.cell(rowKeys[i], cols[i], newValues[i]);
+            return count;
+        } finally {
+            text = null;
+            rowKeys = null;
+            cols = null;
+            newValues = null;
+        }
+    }
+
+    /**
+     * Reads a change array and adds it to the changes read.
+     */
+    private void readChange() {
+        expect('[');
+        readValue();
+        expect(',');
+        final int col = readInt();
+        expect(',');
+        readValue();
+        expect(',');
+        final String newValue = readValue();
+        expect(',');
+        final String rowKey = readString(true);
+        // later elements are ignored
+        while (consume(','))
+            readValue();
+        expect(']');
+        if (rowKeys == null) {
+            rowKeys = new String[16];
+            cols = new int[16];
+            newValues = new String[16];
+        } else if (count == rowKeys.length) {
+            rowKeys = Arrays.copyOf(rowKeys, count * 2);
+            cols = Arrays.copyOf(cols, count * 2);
+            newValues = Arrays.copyOf(newValues, count * 2);
+        }
+        rowKeys[count] = rowKey;
+        cols[count] = col;
+        newValues[count] = newValue;
+        count++;
+    }
+
+    /**
+     * Reads a string, number, boolean or null.
+     *
+     * @return the string value, null for null
+     */
+    private String readValue() {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw error("Unexpected end");
+        final char c = text.charAt(pos);
+        if (c == '"')
+            return readString(true);
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return null;
+        }
+        if (text.startsWith("true", pos)) {
+            pos += 4;
+            return "true";
+        }
+        if (text.startsWith("false", pos)) {
+            pos += 5;
+            return "false";
+        }
+        return readNumber();
+    }
+
+    private String readNumber() {
+        skipWhitespace();
+        final int start = pos;
+        if (pos < text.length() && text.charAt(pos) == '-')
+            pos++;
+        final int digits = pos;
+        while (pos < text.length() && isNumberChar(text.charAt(pos)))
+            pos++;
+        if (pos == digits || !Character.isDigit(text.charAt(digits)))
+            throw error("Invalid value");
+        return text.substring(start, pos);
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private int readInt() {
+        final int start = pos;
+        final String number = readNumber();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Invalid column index");
+        }
+    }
+
+    /**
+     * Reads a string, unescaped if keep, otherwise skipped.
+     *
+     * @return the string, null if not kept
+     */
+    private String readString(boolean keep) {
+        expect('"');
+        final int start = pos;
+        StringBuilder sb = null;
+        int run = start;
+        while (true) {
+            if (pos >= text.length())
+                throw error("Unterminated string");
+            final char c = text.charAt(pos);
+            if (c == '"')
+                break;
+            if (c < ' ')
+                throw error("Control character in string");
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+            if (keep) {
+                if (sb == null)
+                    sb = new StringBuilder(text.length() - start < 64 ? 16 : 64);
+                sb.append(text, run, pos);
+            }
+            if (++pos >= text.length())
+                throw error("Unterminated string");
+            final char unescaped = unescape(text.charAt(pos++));
+            if (keep)
+                sb.append(unescaped);
+            run = pos;
+        }
+        pos++;
+        if (!keep)
+            return null;
+        return sb == null ? text.substring(start, pos - 1) : sb.append(text, run, pos - 1).toString();
+    }
+
+    /**
+     * The char of the escape sequence starting with the char specified, after
+     * the backslash. Moves past the hex digits of a unicode escape.
+     */
+    private char unescape(char escape) {
+        switch (escape) {
+            case '"':
+            case '\\':
+            case '/':
+                return escape;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (pos + 4 > text.length())
+                    throw error("Invalid unicode escape");
+                try {
+                    final char c = (char) Integer.parseInt(text.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return c;
+                } catch (NumberFormatException e) {
+                    throw error("Invalid unicode escape");
+                }
+            default:
+                throw error("Invalid escape");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length()) {
+            final char c = text.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                return;
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (!consume(c))
+            throw error("Expected '" + c + "'");
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at " + pos);
+    }
+}
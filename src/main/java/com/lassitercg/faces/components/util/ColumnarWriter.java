@@ -0,0 +1,104 @@
+package com.lassitercg.faces.components.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes row data column by column as a JavaScript object of the form:
+ * <pre>
+ * {rows:3,cols:[{v:["a","b","c"]},{d:["USD","EUR"],i:[0,0,1]}]}
+ * </pre>
+ * Each column is either a plain value array (v) or, when that is smaller, a
+ * dictionary of distinct values (d) plus an index into it for every row (i).
+ * Null values are written as empty strings.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class ColumnarWriter {
+
+    private final Writer writer;
+
+    private final VarWriter cols;
+
+    private final int[] indexes;
+
+    private final Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Opens the object and its column array.
+     *
+     * @param writer the writer to stream to
+     * @param rows   the number of rows of each column
+     * @throws IOException
+     */
+    public ColumnarWriter(Writer writer, int rows) throws IOException {
+        this.writer = writer;
+        this.indexes = new int[rows];
+        writer.write("{\"rows\":");
+        writer.write(Integer.toString(rows));
+        writer.write(",\"cols\":");
+        cols = new VarWriter(writer, false);
+    }
+
+    /**
+     * Appends the next column.
+     *
+     * @param cells the value of each row, the array may be reused by the
+     *              caller once the call returns
+     * @throws IOException
+     */
+    public void appendColumn(String[] cells) throws IOException {
+        // sizes in chars: quotes and comma per value, comma per index
+        long plainSize = 0;
+        long dictionarySize = 0;
+        dictionary.clear();
+        for (int row = 0; row < indexes.length; row++) {
+            String value = cells[row];
+            if (value == null)
+                value = cells[row] = "";
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(value, index);
+                dictionarySize += value.length() + 3;
+            }
+            indexes[row] = index;
+            plainSize += value.length() + 3;
+            dictionarySize += Integer.toString(index).length() + 1;
+        }
+
+        VarWriter vwCol = cols.openObject();
+        if (dictionarySize < plainSize) {
+            writer.write("\"d\":");
+            VarWriter vwDictionary = new VarWriter(writer, false);
+            for (String value : dictionary.keySet())
+                vwDictionary.appendArrayValue(value, true);
+            vwDictionary.closeVar();
+            writer.write(",\"i\":");
+            VarWriter vwIndexes = new VarWriter(writer, false);
+            for (int row = 0; row < indexes.length; row++)
+                vwIndexes.appendArrayValue(Integer.toString(indexes[row]), false);
+            vwIndexes.closeVar();
+        } else {
+            writer.write("\"v\":");
+            VarWriter vwValues = new VarWriter(writer, false);
+            for (int row = 0; row < indexes.length; row++)
+                vwValues.appendArrayValue(cells[row], true);
+            vwValues.closeVar();
+        }
+        vwCol.closeVar();
+        dictionary.clear();
+    }
+
+    /**
+     * Closes the column array and the object.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        cols.closeVar();
+        writer.write('}');
+    }
+}
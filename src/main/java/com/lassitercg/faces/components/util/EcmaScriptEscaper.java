@@ -0,0 +1,148 @@
+package com.lassitercg.faces.components.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes strings for use inside quoted JavaScript string literals. Escapes
+ * the same characters as commons-lang <code>StringEscapeUtils.escapeEcmaScript</code>
+ * (quotes, backslash, slash, control characters and anything outside of
+ * printable ASCII), but appends directly to the target builder or writer and
+ * writes the value as is when nothing needs escaping, so no intermediate
+ * strings are allocated per value.
+ * <p>
+ * The single quote is written as <code>\\u0027</code> rather than
+ * <code>\\'</code>, so the output is also valid inside JSON strings.
+ * Characters outside the basic multilingual plane are written as two
+ * <code>\\uXXXX</code> escapes of their surrogate pair.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public final class EcmaScriptEscaper {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The escape sequence of each ASCII character, null if it is written as
+     * is.
+     */
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c < 32; c++)
+            ESCAPES[c] = "\\u00" + HEX[c >> 4] + HEX[c & 0xF];
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\''] = "\\u0027";
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['/'] = "\\/";
+    }
+
+    private EcmaScriptEscaper() {
+    }
+
+    /**
+     * Escapes the value.
+     *
+     * @param value the value to escape, may be null
+     * @return the escaped value, the value itself if nothing needs escaping
+     */
+    public static String escape(String value) {
+        if (value == null)
+            return null;
+        final int first = indexOfEscape(value);
+        if (first < 0)
+            return value;
+        final StringBuilder sb = new StringBuilder(value.length() + 16);
+        sb.append(value, 0, first);
+        escape(value, first, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the escaped value to the builder.
+     *
+     * @param value the value to escape
+     * @param sb    the builder to append to
+     */
+    public static void escape(String value, StringBuilder sb) {
+        final int first = indexOfEscape(value);
+        if (first < 0) {
+            sb.append(value);
+            return;
+        }
+        sb.append(value, 0, first);
+        escape(value, first, sb);
+    }
+
+    /**
+     * Writes the escaped value to the writer.
+     *
+     * @param value  the value to escape
+     * @param writer the writer to write to
+     * @throws IOException
+     */
+    public static void escape(String value, Writer writer) throws IOException {
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 128 && ESCAPES[c] == null)
+                continue;
+            if (i > start)
+                writer.write(value, start, i - start);
+            if (c < 128) {
+                writer.write(ESCAPES[c]);
+            } else {
+                writer.write('\\');
+                writer.write('u');
+                writer.write(HEX[c >> 12]);
+                writer.write(HEX[(c >> 8) & 0xF]);
+                writer.write(HEX[(c >> 4) & 0xF]);
+                writer.write(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        if (start == 0)
+            writer.write(value);
+        else if (start < length)
+            writer.write(value, start, length - start);
+    }
+
+    /**
+     * Appends the value from the index specified on, escaping as needed.
+     */
+    private static void escape(String value, int from, StringBuilder sb) {
+        final int length = value.length();
+        for (int i = from; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 128) {
+                final String escape = ESCAPES[c];
+                if (escape == null)
+                    sb.append(c);
+                else
+                    sb.append(escape);
+            } else {
+                sb.append('\\').append('u').append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    /**
+     * The index of the first character that needs escaping, or -1.
+     */
+    private static int indexOfEscape(String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 128 || ESCAPES[c] != null)
+                return i;
+        }
+        return -1;
+    }
+}
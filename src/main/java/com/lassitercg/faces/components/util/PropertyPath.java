@@ -0,0 +1,242 @@
+package com.lassitercg.faces.components.util;
+
+import org.apache.commons.lang3.ClassUtils;
+import javax.el.ExpressionFactory;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+/**
+ * A value expression of the form <code>#{var.a.b}</code> compiled into a chain
+ * of property accessors, so the value can be read and written on a row object
+ * directly instead of resolving it through the EL resolver chain.
+ * <p>
+ * Each step is resolved like the standard Map and Bean resolvers do: a Map
+ * base is looked up by key, anything else by its bean property. Accessor
+ * methods are looked up once per class and cached. Steps that can't be
+ * resolved this way (lists, arrays, missing properties, etc) are reported as
+ * {@link #UNRESOLVED} so the caller can fall back to the expression. So is an
+ * accessor that throws: the expression calls it again and reports the
+ * failure as EL would.
+ * <p>
+ * Custom EL resolvers are not consulted, callers must only use a path where
+ * the expression resolves like the path does.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public final class PropertyPath {
+
+    /**
+     * Returned by {@link #getValue(Object)} when the path can't be resolved
+     * directly on the base object.
+     */
+    public static final Object UNRESOLVED = new Object();
+
+    private final Step[] steps;
+
+    private PropertyPath(Step[] steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles the expression string if it is a plain property path on the
+     * var specified, e.g. <code>#{row.account.name}</code>.
+     *
+     * @param expression the expression string
+     * @param var        the name of the row var
+     * @return the compiled path, or null if the expression is not a plain
+     * property path on the var
+     */
+    public static PropertyPath compile(String expression, String var) {
+        if (expression == null || var == null || expression.length() < 4)
+            return null;
+        final char start = expression.charAt(0);
+        if ((start != '#' && start != '$') || expression.charAt(1) != '{'
+                || expression.charAt(expression.length() - 1) != '}')
+            return null;
+
+        final String[] names = expression.substring(2, expression.length() - 1).trim().split("\\.", -1);
+        if (names.length < 2 || !names[0].equals(var))
+            return null;
+        final Step[] steps = new Step[names.length - 1];
+        for (int i = 1; i < names.length; i++) {
+            if (!isIdentifier(names[i]))
+                return null;
+            steps[i - 1] = new Step(names[i]);
+        }
+        return new PropertyPath(steps);
+    }
+
+    /**
+     * True if the name is a Java identifier and not one of the EL reserved
+     * words that would change the meaning of the expression.
+     */
+    private static boolean isIdentifier(String name) {
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0)))
+            return false;
+        for (int i = 1; i < name.length(); i++)
+            if (!Character.isJavaIdentifierPart(name.charAt(i)))
+                return false;
+        return !"empty".equals(name) && !"not".equals(name) && !"and".equals(name) && !"or".equals(name)
+                && !"div".equals(name) && !"mod".equals(name) && !"eq".equals(name) && !"ne".equals(name)
+                && !"lt".equals(name) && !"gt".equals(name) && !"le".equals(name) && !"ge".equals(name)
+                && !"true".equals(name) && !"false".equals(name) && !"null".equals(name)
+                && !"instanceof".equals(name);
+    }
+
+    /**
+     * Gets the value of the path on the base object. As with EL, a null
+     * anywhere along the path results in null.
+     *
+     * @param base the row object
+     * @return the value, or {@link #UNRESOLVED}
+     */
+    public Object getValue(Object base) {
+        return getValue(base, steps.length);
+    }
+
+    /**
+     * Walks the first count steps of the path.
+     */
+    private Object getValue(Object base, int count) {
+        Object value = base;
+        for (int i = 0; i < count && value != null; i++) {
+            value = steps[i].get(value);
+            if (value == UNRESOLVED)
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * Sets the value of the path on the base object. Values for bean
+     * properties are coerced to the property type with the expression factory.
+     *
+     * @param base    the row object
+     * @param value   the new value
+     * @param factory the expression factory used for coercion
+     * @return true if the value was set, false if the path can't be resolved
+     * directly or the setter threw, and the caller should fall back to the
+     * expression
+     */
+    public boolean setValue(Object base, Object value, ExpressionFactory factory) {
+        final Object parent = getValue(base, steps.length - 1);
+        if (parent == null || parent == UNRESOLVED)
+            return false;
+        return steps[steps.length - 1].set(parent, value, factory);
+    }
+
+    /**
+     * A single property step of the path. The accessors of the last class seen
+     * are cached, row objects are almost always of the same class.
+     */
+    private static final class Step {
+
+        private final String name;
+
+        private volatile Accessors cached;
+
+        Step(String name) {
+            this.name = name;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object get(Object base) {
+            if (base instanceof Map)
+                return ((Map<Object, Object>) base).get(name);
+            final Accessors accessors = accessorsFor(base.getClass());
+            if (accessors.getter == null)
+                return UNRESOLVED;
+            return invoke(accessors.getter, base);
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean set(Object base, Object value, ExpressionFactory factory) {
+            if (base instanceof Map) {
+                ((Map<Object, Object>) base).put(name, value);
+                return true;
+            }
+            final Accessors accessors = accessorsFor(base.getClass());
+            if (accessors.setter == null)
+                return false;
+            final Class<?> type = accessors.setter.getParameterTypes()[0];
+            // boxed values of primitive properties need no coercion
+            if (value == null ? type.isPrimitive() : !ClassUtils.primitiveToWrapper(type).isInstance(value))
+                value = factory.coerceToType(value, type);
+            return invoke(accessors.setter, base, value) != UNRESOLVED;
+        }
+
+        private Accessors accessorsFor(Class<?> type) {
+            Accessors accessors = cached;
+            if (accessors == null || accessors.type != type) {
+                accessors = new Accessors(type, name);
+                cached = accessors;
+            }
+            return accessors;
+        }
+
+        /**
+         * Calls the accessor, {@link #UNRESOLVED} if it can't be called or
+         * throws.
+         */
+        private Object invoke(Method method, Object base, Object... args) {
+            try {
+                return method.invoke(base, args);
+            } catch (InvocationTargetException e) {
+                return UNRESOLVED;
+            } catch (IllegalAccessException e) {
+                return UNRESOLVED;
+            }
+        }
+    }
+
+    /**
+     * The getter and setter of a property for a single class.
+     */
+    private static final class Accessors {
+
+        final Class<?> type;
+
+        final Method getter;
+
+        final Method setter;
+
+        Accessors(Class<?> type, String name) {
+            this.type = type;
+            Method read = null;
+            Method write = null;
+            try {
+                for (PropertyDescriptor pd : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                    if (pd.getName().equals(name)) {
+                        read = accessible(pd.getReadMethod());
+                        write = accessible(pd.getWriteMethod());
+                        break;
+                    }
+                }
+            } catch (IntrospectionException e) {
+                // leave unresolved, the expression reports the problem
+            }
+            this.getter = read;
+            this.setter = write;
+        }
+
+        /**
+         * Makes the method callable when declared on a non public class (e.g.
+         * a public getter on a private nested class).
+         */
+        private static Method accessible(Method method) {
+            if (method == null || Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+                return method;
+            try {
+                method.setAccessible(true);
+                return method;
+            } catch (SecurityException e) {
+                return null;
+            }
+        }
+    }
+}
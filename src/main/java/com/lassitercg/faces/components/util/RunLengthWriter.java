@@ -0,0 +1,96 @@
+package com.lassitercg.faces.components.util;
+
+import java.io.IOException;
+
+/**
+ * Writes consecutive row values as runs into a flat JavaScript array. Runs of
+ * valued rows are written as <code>start,length,value</code> triples, runs of
+ * flagged rows as <code>start,length</code> pairs. Rows without a value are
+ * skipped entirely, so sparse and repetitive columns encode compactly.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class RunLengthWriter {
+
+    /**
+     * Marker for rows without a value.
+     */
+    public static final int NONE = -1;
+
+    private final VarWriter out;
+
+    private final boolean valued;
+
+    private int start = -1;
+
+    private int length;
+
+    private int value = NONE;
+
+    /**
+     * Constructs an instance writing to the array specified.
+     *
+     * @param out    the array to write the runs to
+     * @param valued true to write start,length,value triples, false to write
+     *               start,length pairs
+     */
+    public RunLengthWriter(VarWriter out, boolean valued) {
+        this.out = out;
+        this.valued = valued;
+    }
+
+    /**
+     * Appends the value of the next row. Rows must be appended in ascending
+     * order.
+     *
+     * @param row   the row index
+     * @param value the value for the row, or {@link #NONE}
+     * @throws IOException
+     */
+    public void append(int row, int value) throws IOException {
+        if (value == this.value && row == start + length) {
+            length++;
+            return;
+        }
+        flush();
+        if (value != NONE) {
+            this.start = row;
+            this.length = 1;
+        }
+        this.value = value;
+    }
+
+    /**
+     * Appends a complete run.
+     *
+     * @param row    the first row of the run
+     * @param length the number of rows in the run
+     * @param value  the value of the run
+     * @throws IOException
+     */
+    public void appendRun(int row, int length, int value) throws IOException {
+        flush();
+        if (length > 0 && value != NONE) {
+            this.start = row;
+            this.length = length;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Writes the pending run, if any.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if (value != NONE && length > 0) {
+            out.appendArrayValue(Integer.toString(start), false);
+            out.appendArrayValue(Integer.toString(length), false);
+            if (valued)
+                out.appendArrayValue(Integer.toString(value), false);
+        }
+        start = -1;
+        length = 0;
+        value = NONE;
+    }
+}
@@ -0,0 +1,170 @@
+package com.lassitercg.faces.components.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the trigrams (runs of three characters) of a list of strings, used
+ * to find the strings containing a query without scanning all of them. The
+ * rows holding every trigram of the query are the candidates, and only those
+ * are checked with {@link String#contains}. Queries shorter than three
+ * characters are checked against every string.
+ * <p>
+ * The index does no case folding of its own, lower-case both the values and
+ * the query for case-insensitive matching.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class TrigramIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] values;
+
+    private final Map<Long, int[]> postings;
+
+    /**
+     * Indexes the values.
+     *
+     * @param values the values by row, null for rows without a value
+     */
+    public TrigramIndex(String[] values) {
+        this.values = values;
+
+        final Map<Long, Postings> building = new HashMap<Long, Postings>();
+        for (int row = 0; row < values.length; row++) {
+            final String value = values[row];
+            if (value == null)
+                continue;
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                final Long trigram = trigram(value, i);
+                Postings rows = building.get(trigram);
+                if (rows == null) {
+                    rows = new Postings();
+                    building.put(trigram, rows);
+                }
+                rows.add(row);
+            }
+        }
+
+        postings = new HashMap<Long, int[]>(building.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, Postings> entry : building.entrySet())
+            postings.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    /**
+     * The number of rows indexed.
+     *
+     * @return
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Finds the rows whose value contains the query.
+     *
+     * @param query the query
+     * @return the matching rows in ascending order
+     */
+    public int[] find(String query) {
+        if (query.length() < 3)
+            return verify(null, query);
+
+        // the posting lists of the trigrams, shortest first
+        final int count = query.length() - 2;
+        final int[][] lists = new int[count][];
+        for (int i = 0; i < count; i++) {
+            lists[i] = postings.get(trigram(query, i));
+            if (lists[i] == null)
+                return NONE;
+        }
+        Arrays.sort(lists, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return a.length - b.length;
+            }
+        });
+
+        int[] candidates = lists[0];
+        for (int i = 1; i < count && candidates.length > 0; i++)
+            candidates = intersect(candidates, lists[i]);
+        return verify(candidates, query);
+    }
+
+    /**
+     * The candidate rows, or all rows if null, whose value contains the
+     * query.
+     */
+    private int[] verify(int[] candidates, String query) {
+        final int count = candidates == null ? values.length : candidates.length;
+        final int[] result = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = candidates == null ? i : candidates[i];
+            if (values[row] != null && values[row].contains(query))
+                result[size++] = row;
+        }
+        return size == count ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Intersects two ascending row lists.
+     *
+     * @param a the first list
+     * @param b the second list
+     * @return the rows in both lists, ascending
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * The trigram starting at the index specified, packed into a long.
+     */
+    private static Long trigram(String value, int index) {
+        return Long.valueOf(((long) value.charAt(index) << 32) | ((long) value.charAt(index + 1) << 16)
+                | value.charAt(index + 2));
+    }
+
+    /**
+     * A growing ascending list of rows, each row added once.
+     */
+    private static class Postings {
+
+        private int[] rows = new int[4];
+
+        private int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row)
+                return;
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.lassitercg.faces.components.util;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 /**
  * Builds a JavaScript var object or array string. A simple way to generalized a
  * lot of code used in renderers.
@@ -89,7 +87,7 @@ public class VarBuilder {
         if (quoted) {
             sb.append("\"");
             if (value != null)
-                sb.append(StringEscapeUtils.escapeEcmaScript(value));
+                EcmaScriptEscaper.escape(value, sb);
             sb.append("\"");
         } else if (value != null)
             sb.append(value);
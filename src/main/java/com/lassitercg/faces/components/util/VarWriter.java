@@ -0,0 +1,156 @@
+package com.lassitercg.faces.components.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming counterpart of {@link VarBuilder}. Writes a JavaScript object or
+ * array directly to a Writer (typically the ResponseWriter) as values are
+ * appended instead of accumulating the whole var in memory.
+ *
+ * @author <a href="mailto:mlassiter@lassitercg.com">Mark Lassiter</a>
+ */
+public class VarWriter {
+
+    private final Writer writer;
+
+    private final boolean isObject;
+
+    private boolean firstValue = true;
+
+    /**
+     * Constructs an instance of the writer and opens the object or array.
+     *
+     * @param writer   the writer to stream to
+     * @param isObject true if writing an Object, false if an array.
+     * @throws IOException
+     */
+    public VarWriter(Writer writer, boolean isObject) throws IOException {
+        this.writer = writer;
+        this.isObject = isObject;
+        if (isObject)
+            writer.write('{');
+        else
+            writer.write('[');
+    }
+
+    /**
+     * Called internally to prepare for next value
+     */
+    private void next() throws IOException {
+        if (firstValue)
+            firstValue = false;
+        else
+            writer.write(',');
+    }
+
+    /**
+     * Appends an Object name/value pair to the object.
+     *
+     * @param propertyName  the property name
+     * @param propertyValue the property value
+     * @param quoted        if true, the value is quoted and escaped.
+     * @return this writer
+     * @throws IOException
+     */
+    public VarWriter appendProperty(String propertyName, String propertyValue, boolean quoted) throws IOException {
+        next();
+        writer.write(propertyName);
+        writer.write(':');
+        appendText(propertyValue, quoted);
+        return this;
+    }
+
+    /**
+     * Appends a property with the name "rYY_cXX" where YY is the row and XX is
+     * the column.
+     *
+     * @param row
+     * @param col
+     * @param propertyValue
+     * @param quoted
+     * @return this writer
+     * @throws IOException
+     */
+    public VarWriter appendRowColProperty(int row, int col, String propertyValue, boolean quoted)
+            throws IOException {
+        next();
+        writer.write('r');
+        writer.write(Integer.toString(row));
+        writer.write("_c");
+        writer.write(Integer.toString(col));
+        writer.write(':');
+        appendText(propertyValue, quoted);
+        return this;
+    }
+
+    /**
+     * Appends text to the var
+     *
+     * @param value  the value to append
+     * @param quoted if true, the value is quoted and escaped.
+     * @return this writer
+     * @throws IOException
+     */
+    public VarWriter appendText(String value, boolean quoted) throws IOException {
+        if (quoted) {
+            writer.write('"');
+            if (value != null)
+                EcmaScriptEscaper.escape(value, writer);
+            writer.write('"');
+        } else if (value != null)
+            writer.write(value);
+        return this;
+    }
+
+    /**
+     * Appends an array value.
+     *
+     * @param value
+     * @param quoted
+     * @return this writer
+     * @throws IOException
+     */
+    public VarWriter appendArrayValue(String value, boolean quoted) throws IOException {
+        next();
+        return appendText(value, quoted);
+    }
+
+    /**
+     * Opens a nested array as the next value of this array. The nested writer
+     * must be closed before anything else is appended to this one.
+     *
+     * @return the nested array writer
+     * @throws IOException
+     */
+    public VarWriter openArray() throws IOException {
+        next();
+        return new VarWriter(writer, false);
+    }
+
+    /**
+     * Opens a nested object as the next value of this array. The nested writer
+     * must be closed before anything else is appended to this one.
+     *
+     * @return the nested object writer
+     * @throws IOException
+     */
+    public VarWriter openObject() throws IOException {
+        next();
+        return new VarWriter(writer, true);
+    }
+
+    /**
+     * Closes the array or object.
+     *
+     * @return this writer
+     * @throws IOException
+     */
+    public VarWriter closeVar() throws IOException {
+        if (this.isObject)
+            writer.write('}');
+        else
+            writer.write(']');
+        return this;
+    }
+}
@@ -44,12 +44,52 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
         this.focusInput = $(this.jqId + '_focus');
         // need to track to avoid recursion
         this.focusing = false;
+        // remote data is fetched from the sheet data resource first
+        if (this.cfg.dataUrl) {
+            var $this = this;
+            $.ajax({url: this.cfg.dataUrl, dataType: 'json', cache: true, global: false})
+                .done(function (data) {
+                    $.extend($this.cfg, data);
+                    $this.setupData();
+                })
+                .fail(function () {
+                    // e.g. no longer held by the server, the page must be reloaded
+                    $this.sheetDiv.addClass('ui-state-error');
+                    $this.tableDiv.text('The sheet data could not be loaded, please reload the page.');
+                });
+        } else
+            this.setupData();
+    },
+
+    // prepares the row data and creates the table
+    setupData: function () {
+        // columnar data is expanded into rows as they are accessed
+        if (!$.isArray(this.cfg.data))
+            this.setupColumnarData();
+        // lazy sheets start with the first block only
+        if (this.cfg.lazy)
+            this.setupLazyData();
+        // decode the style and read only runs into lookup arrays
+        this.styleClasses = [];
+        this.styleIds = {};
+        this.cellStyles = [];
+        this.rowStyles = null;
+        this.readOnlyBits = [];
+        this.decodeStyles(this.cfg);
         // create table
         this.setupHandsonTable();
     },
 
+    // redraws the table once it was created, i.e. the remote data arrived
+    redraw: function () {
+        if (this.ht)
+            this.ht.render();
+    },
+
     // updates the row with the new data value
     updateData: function (rowKey, v) {
+        if (!this.cfg.rowKeys)
+            return;
         for (var i = 0; i < this.cfg.rowKeys.length; i++)
             if (this.cfg.rowKeys[i] == rowKey) {
                 this.cfg.data[i] = v;
@@ -57,6 +97,184 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
             }
     },
 
+    // replaces columnar data with rows that are expanded on first access
+    setupColumnarData: function () {
+        this.columnar = this.cfg.data.cols;
+        this.unexpanded = [];
+        this.cfg.data = this.fillRows(this.cfg.data.rows, this.unexpanded);
+    },
+
+    // returns an array of count rows, all set to the row specified
+    fillRows: function (count, row) {
+        var rows = new Array(count);
+        for (var i = 0; i < count; i++)
+            rows[i] = row;
+        return rows;
+    },
+
+    // expands the row at index i from the columns specified
+    expandRow: function (cols, i) {
+        var row = new Array(cols.length);
+        for (var c = 0; c < cols.length; c++) {
+            var col = cols[c];
+            row[c] = col.d ? col.d[col.i[i]] : col.v[i];
+        }
+        return row;
+    },
+
+    // converts block data to rows, expanding it if columnar
+    toRows: function (data) {
+        if ($.isArray(data))
+            return data;
+        var rows = new Array(data.rows);
+        for (var i = 0; i < data.rows; i++)
+            rows[i] = this.expandRow(data.cols, i);
+        return rows;
+    },
+
+    // handsontable modifyRow hook, runs before a row is read or written and
+    // expands the row from the columnar data if needed
+    expandOnAccess: function (row) {
+        var data = this.cfg.data;
+        if (data[row] === this.unexpanded)
+            data[row] = this.expandRow(this.columnar, row);
+        return row;
+    },
+
+    // pads the data for a lazy sheet out to the total row count. rows not
+    // yet fetched share an empty placeholder row and are read only.
+    setupLazyData: function () {
+        var total = this.cfg.totalRows;
+        this.placeholder = [];
+        this.loadedBlocks = {};
+        this.pendingBlocks = {};
+        if (this.cfg.data.length > 0)
+            this.loadedBlocks[0] = true;
+        for (var i = this.cfg.data.length; i < total; i++)
+            this.cfg.data.push(this.placeholder);
+    },
+
+    // creates a zero filled lookup array of the size specified
+    newLookup: function (size) {
+        return window.Uint32Array ? new Uint32Array(size) : this.fillRows(size, 0);
+    },
+
+    // returns the style id (index + 1) of the style class, adding it
+    styleId: function (styleClass) {
+        var id = this.styleIds[styleClass];
+        if (!id) {
+            this.styleClasses.push(styleClass);
+            id = this.styleIds[styleClass] = this.styleClasses.length;
+        }
+        return id;
+    },
+
+    // fills the lookup from runs of start,length,style triples
+    fillStyleRuns: function (lookup, runs, ids) {
+        for (var i = 0; i < runs.length; i += 3) {
+            var end = runs[i] + runs[i + 1], id = ids[runs[i + 2]];
+            for (var r = runs[i]; r < end; r++)
+                lookup[r] = id;
+        }
+    },
+
+    // sets the bits from runs of start,length pairs
+    fillBitRuns: function (bits, runs) {
+        for (var i = 0; i < runs.length; i += 2) {
+            var end = runs[i] + runs[i + 1];
+            for (var r = runs[i]; r < end; r++)
+                bits[r >>> 5] |= 1 << (r & 31);
+        }
+    },
+
+    // decodes the style and read only runs of a block of rows (or the
+    // initial data) into per column lookups covering all rows
+    decodeStyles: function (b) {
+        var size = this.cfg.data.length;
+        var ids = [];
+        for (var i = 0; i < b.styleClasses.length; i++)
+            ids[i] = this.styleId(b.styleClasses[i]);
+        for (var c = 0; c < b.styles.length; c++) {
+            if (!b.styles[c])
+                continue;
+            if (!this.cellStyles[c])
+                this.cellStyles[c] = this.newLookup(size);
+            this.fillStyleRuns(this.cellStyles[c], b.styles[c], ids);
+        }
+        if (b.rowStyles) {
+            if (!this.rowStyles)
+                this.rowStyles = this.newLookup(size);
+            this.fillStyleRuns(this.rowStyles, b.rowStyles, ids);
+        }
+        for (var c = 0; c < b.readOnly.length; c++) {
+            if (!b.readOnly[c])
+                continue;
+            if (!this.readOnlyBits[c])
+                this.readOnlyBits[c] = this.newLookup(Math.ceil(size / 32));
+            this.fillBitRuns(this.readOnlyBits[c], b.readOnly[c]);
+        }
+    },
+
+    // the style class from the lookup for the row, if any
+    styleAt: function (lookup, row) {
+        var id = lookup ? lookup[row] : 0;
+        return id ? this.styleClasses[id - 1] : null;
+    },
+
+    // true if the cell is flagged read only
+    isReadOnlyCell: function (row, col) {
+        var bits = this.readOnlyBits[col];
+        return bits ? (bits[row >>> 5] & (1 << (row & 31))) !== 0 : false;
+    },
+
+    // true if the row has been fetched from the server
+    isRowLoaded: function (row) {
+        return !this.cfg.lazy || this.loadedBlocks[Math.floor(row / this.cfg.lazyBlockSize)] === true;
+    },
+
+    // requests the block of rows containing the row specified if it has
+    // not been fetched yet
+    ensureRowLoaded: function (row) {
+        var block = Math.floor(row / this.cfg.lazyBlockSize);
+        if (this.loadedBlocks[block] || this.pendingBlocks[block])
+            return;
+        this.pendingBlocks[block] = true;
+        var $this = this;
+        var options = {
+            source: this.id,
+            process: '@none',
+            update: this.id,
+            global: false,
+            params: [{name: this.id + '_lazyfirst', value: block * this.cfg.lazyBlockSize}],
+            onsuccess: function (responseXML, status, xhr) {
+                PrimeFaces.ajax.Response.handle(responseXML, status, xhr, {
+                    widget: $this,
+                    handle: function (content) {
+                        this.mergeBlock(block, content);
+                    }
+                });
+                return true;
+            },
+            oncomplete: function () {
+                delete $this.pendingBlocks[block];
+            }
+        };
+        PrimeFaces.ajax.Request.handle(options);
+    },
+
+    // merges a block of rows returned by the server into the sheet data
+    mergeBlock: function (block, content) {
+        var b = JSON.parse(content);
+        var rows = this.toRows(b.data);
+        for (var i = 0; i < rows.length; i++) {
+            this.cfg.data[b.first + i] = rows[i];
+            this.cfg.rowKeys[b.first + i] = b.rowKeys[i];
+        }
+        this.decodeStyles(b);
+        this.loadedBlocks[block] = true;
+        this.ht.render();
+    },
+
     // true if sheet has assigned behavior, otherwise false
     hasBehavior: function (event) {
         if (this.cfg.behaviors) {
@@ -79,18 +297,44 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
         }
     },
 
-    // fired when a sortable column is clicked
+    // the sort columns and orders, primary sort first
+    getSortState: function () {
+        var cols = String(this.sortByInput.val()).split(','),
+            orders = String(this.sortOrderInput.val()).split(','),
+            state = [];
+        for (var i = 0; i < cols.length; i++) {
+            if (cols[i] !== '' && cols[i] >= 0)
+                state.push({col: parseInt(cols[i], 10), order: orders[i] || 'ascending'});
+        }
+        return state;
+    },
+
+    // fired when a sortable column is clicked, shift-click adds the column to
+    // the sort or toggles its order if already sorted by
     sortClick: function (sheet, e, col) {
         if ($(e.target).is(':not(th,span,div)'))
             return;
-        var sc = sheet.sortByInput.val();
-        if (col == sc) {
-            var so = sheet.sortOrderInput.val();
-            sheet.sortOrderInput.val((so == 'ascending' ? 'descending' : 'ascending'));
+        var state = sheet.getSortState(), idx = -1;
+        for (var i = 0; i < state.length; i++) {
+            if (state[i].col == col)
+                idx = i;
+        }
+        if (e.shiftKey && state.length > 0) {
+            if (idx >= 0)
+                state[idx].order = (state[idx].order == 'ascending' ? 'descending' : 'ascending');
+            else
+                state.push({col: col, order: 'ascending'});
         } else {
-            sheet.sortOrderInput.val('ascending');
-            sheet.sortByInput.val(col);
+            var order = (idx == 0 && state[0].order == 'ascending') ? 'descending' : 'ascending';
+            state = [{col: col, order: order}];
+        }
+        var cols = [], orders = [];
+        for (var j = 0; j < state.length; j++) {
+            cols.push(state[j].col);
+            orders.push(state[j].order);
         }
+        sheet.sortByInput.val(cols.join(','));
+        sheet.sortOrderInput.val(orders.join(','));
         // destroy editor to avoid posting request after resort
         sheet.ht.destroyEditor(true);
         if (sheet.hasBehavior('sort'))
@@ -174,14 +418,17 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
             },
             cellRenderer: function (instance, td, row, col, prop, value, cellProperties) {
                 Handsontable.TextCell.renderer.apply(this, arguments);
+                // fetch rows as they scroll into view
+                if (!$this.isRowLoaded(row))
+                    $this.ensureRowLoaded(row);
 
                 var styleClass = '';
                 // append row style (if we have one)
-                var rowClass = $this.cfg.rowStyles[row];
+                var rowClass = $this.styleAt($this.rowStyles, row);
                 if (rowClass)
                     styleClass = rowClass;
                 // append cell style (if we have one)
-                var cellClass = $this.cfg.styles['r' + row + '_c' + col];
+                var cellClass = $this.styleAt($this.cellStyles[col], row);
                 if (cellClass)
                     styleClass = styleClass.concat(' ').concat(cellClass);
                 // check for errors
@@ -199,8 +446,7 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
             cells: function (row, col, prop) {
                 var cp = {};
                 cp.renderer = this.cellRenderer;
-                var readonly = $this.cfg.readOnly['r' + row + '_c' + col];
-                if (readonly)
+                if ($this.isReadOnlyCell(row, col) || !$this.isRowLoaded(row))
                     cp.readOnly = true;
                 return cp;
             },
@@ -258,18 +504,25 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
                 // handle sorting
                 var sortable = $this.cfg.sortable[col];
                 if (sortable) {
-                    $(TH).find('.relative .ui-sortable-column-icon').remove();
-                    var sortCol = $this.sortByInput.val();
-                    var sortOrder = $this.sortOrderInput.val();
+                    $(TH).find('.relative .ui-sortable-column-icon, .relative .ui-sortable-column-badge').remove();
+                    var sortState = $this.getSortState(), sortIdx = -1;
+                    for (var i = 0; i < sortState.length; i++) {
+                        if (sortState[i].col == col)
+                            sortIdx = i;
+                    }
                     var iconclass = 'ui-sortable-column-icon ui-icon ui-icon ui-icon-carat-2-n-s ';
-                    if (sortCol == col) {
+                    if (sortIdx >= 0) {
                         iconclass = iconclass
-                            + (sortOrder == 'ascending' ? 'ui-icon-triangle-1-n' : 'ui-icon-triangle-1-s');
+                            + (sortState[sortIdx].order == 'ascending' ? 'ui-icon-triangle-1-n' : 'ui-icon-triangle-1-s');
                         $(TH).addClass('ui-state-active');
                     } else {
                         $(TH).removeClass('ui-state-active');
                     }
                     $(TH).find('.relative').append("<span class='" + iconclass + "'></span>");
+                    // number the columns when sorting by more than one
+                    if (sortIdx >= 0 && sortState.length > 1)
+                        $(TH).find('.relative').append("<span class='ui-sortable-column-badge'>" + (sortIdx + 1)
+                            + "</span>");
                     $(TH).addClass('ui-sortable');
                     $(TH).off('click').click(function (e) {
                         $this.sortClick($this, e, col);
@@ -330,6 +583,12 @@ PrimeFaces.widget.Sheet = PrimeFaces.widget.BaseWidget.extend({
             }
         };
 
+        if ($this.columnar) {
+            options.modifyRow = function (row) {
+                return $this.expandOnAccess(row);
+            };
+        }
+
         if ($this.cfg.fixedColumnsLeft)
             options.fixedColumnsLeft = $this.cfg.fixedColumnsLeft;
 
@@ -0,0 +1,98 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class CellMapTest {
+
+	@Test
+	public void storesValuesByCell() {
+		final CellMap<String> map = new CellMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put("r_1", 0, "a"));
+		assertEquals(map.put("r_1", 0, "b"), "a");
+		map.put("r_1", 1, null);
+		map.put("r_2", 0, "c");
+		assertEquals(map.size(), 3);
+		assertEquals(map.get("r_1", 0), "b");
+		assertTrue(map.containsKey("r_1", 1));
+		assertNull(map.get("r_1", 1));
+		assertFalse(map.containsKey("r_2", 1));
+		assertFalse(map.containsKey("r_3", 0));
+		assertEquals(map.remove("r_2", 0), "c");
+		assertFalse(map.containsKey("r_2", 0));
+		assertEquals(map.size(), 2);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey("r_1", 0));
+	}
+
+	@Test
+	public void removesWhileIterating() {
+		final CellMap<Integer> map = new CellMap<Integer>();
+		for (int i = 0; i < 10; i++) {
+			map.put("r_" + i, i % 3, i);
+		}
+		final CellMap<Integer>.Cursor cursor = map.cursor();
+		int expected = 0;
+		while (cursor.next()) {
+			assertEquals(cursor.getRowKey(), "r_" + expected);
+			assertEquals(cursor.getColIndex(), expected % 3);
+			assertEquals(cursor.getValue().intValue(), expected);
+			if (expected % 2 == 0) {
+				cursor.remove();
+			}
+			expected++;
+		}
+		assertEquals(expected, 10);
+		assertEquals(map.size(), 5);
+		assertFalse(map.containsKey("r_4", 1));
+		assertEquals(map.get("r_5", 2).intValue(), 5);
+	}
+
+	@Test
+	public void matchesHashMap() throws Exception {
+		final Random random = new Random(42);
+		final CellMap<Integer> map = new CellMap<Integer>();
+		final Map<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			final String rowKey = "r_" + random.nextInt(300);
+			final int col = random.nextInt(8);
+			final String cell = rowKey + "/" + col;
+			if (random.nextInt(3) == 0) {
+				assertEquals(map.remove(rowKey, col), expected.remove(cell));
+			} else {
+				assertEquals(map.put(rowKey, col, i), expected.put(cell, i));
+			}
+		}
+		assertEquals(map.size(), expected.size());
+
+		final CellMap<Integer> copy = copy(map);
+		assertEquals(copy.size(), expected.size());
+		final CellMap<Integer>.Cursor cursor = copy.cursor();
+		while (cursor.next()) {
+			assertEquals(cursor.getValue(), expected.get(cursor.getRowKey() + "/" + cursor.getColIndex()));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> CellMap<V> copy(CellMap<V> map) throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(map);
+		out.close();
+		return (CellMap<V>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+}
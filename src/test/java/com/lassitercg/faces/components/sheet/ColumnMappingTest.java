@@ -0,0 +1,45 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class ColumnMappingTest {
+
+	@Test
+	public void mapsBothWays() {
+		final ColumnMapping mapping = ColumnMapping.of(new boolean[] { true, false, true, true, false });
+		assertEquals(mapping.getRenderedColumns(), new int[] { 0, 2, 3 });
+		assertEquals(mapping.getColumnCount(), 5);
+		for (int renderIdx = 0; renderIdx < 3; renderIdx++) {
+			assertEquals(mapping.getRenderIndex(mapping.getRealIndex(renderIdx)), renderIdx);
+		}
+		assertEquals(mapping.getRenderIndex(1), -1);
+		assertEquals(mapping.getRenderIndex(4), -1);
+		assertEquals(mapping.getRenderIndex(5), -1);
+		assertEquals(mapping.getRenderIndex(-1), -1);
+	}
+
+	@Test
+	public void keepsClientOrder() {
+		final ColumnMapping mapping = new ColumnMapping(new int[] { 3, 0 }, 4);
+		assertEquals(mapping.getRealIndex(0), 3);
+		assertEquals(mapping.getRenderIndex(3), 0);
+		assertEquals(mapping.getRenderIndex(0), 1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsInvalidRenderIndex() {
+		ColumnMapping.of(new boolean[] { true, false }).getRealIndex(1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsColumnsOutOfRange() {
+		new ColumnMapping(new int[] { 0, 4 }, 4);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsRepeatedColumns() {
+		new ColumnMapping(new int[] { 1, 1 }, 4);
+	}
+}
@@ -0,0 +1,44 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+public class DataCacheTest {
+
+	@Test
+	public void boundsTotalSize() {
+		final DataCache cache = new DataCache(100);
+		cache.put("a", new byte[40]);
+		cache.put("b", new byte[40]);
+		assertEquals(cache.getBytes(), 80);
+		// a is used more recently than b, so b is dropped first
+		assertNotNull(cache.get("a"));
+		cache.put("c", new byte[40]);
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(cache.getBytes(), 80);
+	}
+
+	@Test
+	public void keepsLatestEvenIfTooLarge() {
+		final DataCache cache = new DataCache(100);
+		cache.put("a", new byte[40]);
+		cache.put("b", new byte[150]);
+		assertEquals(cache.size(), 1);
+		assertNotNull(cache.get("b"));
+		assertEquals(cache.getBytes(), 150);
+	}
+
+	@Test
+	public void replacesVersions() {
+		final DataCache cache = new DataCache(100);
+		cache.put("a", new byte[40]);
+		cache.put("a", new byte[10]);
+		assertEquals(cache.size(), 1);
+		assertEquals(cache.getBytes(), 10);
+	}
+}
@@ -0,0 +1,58 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class DataRequestTest {
+
+	@Test
+	public void recognizesDataResource() {
+		final Map<String, String> params = params("jsfsheet", "abc123");
+		// suffix mapping
+		final DataRequest suffixed = DataRequest.parse("/javax.faces.resource/sheetdata.xhtml", null, params);
+		assertNotNull(suffixed);
+		assertEquals(suffixed.getVersion(), "abc123");
+		assertEquals(suffixed.getETag(), "\"abc123\"");
+		// prefix mapping
+		assertNotNull(DataRequest.parse("/faces", "/javax.faces.resource/sheetdata", params));
+	}
+
+	@Test
+	public void ignoresOtherResources() {
+		assertNull(DataRequest.parse("/javax.faces.resource/sheet.js.xhtml", null, params("jsfsheet", "abc")));
+		assertNull(DataRequest.parse("/faces", "/javax.faces.resource/other", params("jsfsheet", "abc")));
+		assertNull(DataRequest.parse("/index.xhtml", null, params("jsfsheet", "abc")));
+		assertNull(DataRequest.parse("/javax.faces.resource/sheetdata.xhtml", null, params("primefaces", "abc")));
+		assertNull(DataRequest.parse("/javax.faces.resource/sheetdata.xhtml", null, params("jsfsheet", null)));
+		assertNull(DataRequest.parse("/javax.faces.resource/sheetdata.xhtml", null, params("jsfsheet", "")));
+	}
+
+	@Test
+	public void answersMatchingIfNoneMatch() {
+		final DataRequest request = DataRequest.parse("/javax.faces.resource/sheetdata.xhtml", null,
+				params("jsfsheet", "abc123"));
+		assertTrue(request.isNotModified("\"abc123\""));
+		assertTrue(request.isNotModified("\"old\", W/\"abc123\""));
+		assertTrue(request.isNotModified("*"));
+		assertFalse(request.isNotModified(null));
+		assertFalse(request.isNotModified("\"abc\""));
+		assertFalse(request.isNotModified("abc123"));
+	}
+
+	private static Map<String, String> params(String library, String version) {
+		final Map<String, String> params = new HashMap<String, String>();
+		params.put("ln", library);
+		if (version != null) {
+			params.put("v", version);
+		}
+		return params;
+	}
+}
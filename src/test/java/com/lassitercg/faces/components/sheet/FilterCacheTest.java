@@ -0,0 +1,116 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.lassitercg.faces.components.util.TrigramIndex;
+
+public class FilterCacheTest {
+
+	@Test
+	public void keepsViewsOfTheSamePageApart() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		assertNull(FilterCache.forView(session, session, "/page.xhtml|form:sheet|a", false));
+		final FilterCache first = FilterCache.forView(session, session, "/page.xhtml|form:sheet|a", true);
+		final FilterCache second = FilterCache.forView(session, session, "/page.xhtml|form:sheet|b", true);
+		assertNotSame(first, second);
+		assertSame(FilterCache.forView(session, session, "/page.xhtml|form:sheet|a", false), first);
+
+		final TrigramIndex index = new TrigramIndex(new String[] { "alpha", "beta" });
+		first.validate("1|2|7");
+		first.putIndex("#{row.name}", index);
+		second.validate("1|2|7");
+		assertNull(second.getIndex("#{row.name}"));
+		assertSame(first.getIndex("#{row.name}"), index);
+	}
+
+	@Test
+	public void dropsIndexesOfOtherData() {
+		final FilterCache cache = FilterCache.forView(new HashMap<String, Object>(), this, "sheet", true);
+		final TrigramIndex index = new TrigramIndex(new String[] { "alpha", "beta" });
+		cache.validate("1|2|7");
+		cache.putIndex("#{row.name}", index);
+		cache.validate("1|2|7");
+		assertSame(cache.getIndex("#{row.name}"), index);
+		// same version and row count, other rows
+		cache.validate("1|2|8");
+		assertNull(cache.getIndex("#{row.name}"));
+
+		cache.putIndex("#{row.name}", index);
+		cache.clear();
+		assertNull(cache.getIndex("#{row.name}"));
+	}
+
+	@Test
+	public void keepsRecentViewsOnly() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		final FilterCache first = FilterCache.forView(session, session, "view0", true);
+		for (int i = 1; i <= FilterCache.MAX_VIEWS; i++) {
+			FilterCache.forView(session, session, "view" + i, true);
+		}
+		assertNull(FilterCache.forView(session, session, "view0", false));
+		assertNotSame(FilterCache.forView(session, session, "view0", true), first);
+	}
+
+	@Test
+	public void reusesRowsOfRefinedFilters() {
+		final FilterCache cache = FilterCache.forView(new HashMap<String, Object>(), this, "sheet", true);
+		cache.validate("1|100|7");
+		final int[] rows = { 2, 5, 8 };
+		cache.putResult(values("0:contains:#{row.name}", "ab"), rows);
+		final Map<String, String> modes = values("0:contains:#{row.name}", FilterPredicate.CONTAINS,
+				"1:exact:#{row.city}", FilterPredicate.EXACT);
+
+		// a narrower value, also with another column filtered
+		assertSame(cache.getRefinedRows(values("0:contains:#{row.name}", "abc"), modes), rows);
+		assertSame(cache.getRefinedRows(values("0:contains:#{row.name}", "xAB", "1:exact:#{row.city}", "Rome"),
+				modes), rows);
+		// a broader or other value, or the column no longer filtered
+		assertNull(cache.getRefinedRows(values("0:contains:#{row.name}", "a"), modes));
+		assertNull(cache.getRefinedRows(values("0:contains:#{row.name}", "ac"), modes));
+		assertNull(cache.getRefinedRows(values("1:exact:#{row.city}", "Rome"), modes));
+
+		cache.putResult(values("1:exact:#{row.city}", "Rome"), new int[] { 3 });
+		assertNull(cache.getRefinedRows(values("1:exact:#{row.city}", "Romeo"), modes));
+		assertEquals(cache.getRefinedRows(values("1:exact:#{row.city}", "Rome"), modes), new int[] { 3 });
+
+		// the result of other data is never reused
+		cache.validate("2|100|7");
+		assertNull(cache.getRefinedRows(values("1:exact:#{row.city}", "Rome"), modes));
+	}
+
+	@Test
+	public void keepsResultsOfViewsOfTheSamePageApart() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		final FilterCache first = FilterCache.forView(session, session, "/page.xhtml|form:sheet|a", true);
+		final FilterCache second = FilterCache.forView(session, session, "/page.xhtml|form:sheet|b", true);
+		final Map<String, String> modes = values("0:contains:#{row.name}", FilterPredicate.CONTAINS);
+		first.validate("1|100|7");
+		second.validate("1|100|7");
+		first.putResult(values("0:contains:#{row.name}", "ab"), new int[] { 1, 2 });
+		second.putResult(values("0:contains:#{row.name}", "x"), new int[] { 4 });
+
+		assertEquals(first.getRefinedRows(values("0:contains:#{row.name}", "abc"), modes), new int[] { 1, 2 });
+		assertNull(second.getRefinedRows(values("0:contains:#{row.name}", "abc"), modes));
+		assertEquals(second.getRefinedRows(values("0:contains:#{row.name}", "xy"), modes), new int[] { 4 });
+
+		second.clear();
+		assertNull(second.getRefinedRows(values("0:contains:#{row.name}", "xy"), modes));
+		assertEquals(first.getRefinedRows(values("0:contains:#{row.name}", "abc"), modes), new int[] { 1, 2 });
+	}
+
+	private static Map<String, String> values(String... keysAndValues) {
+		final Map<String, String> result = new HashMap<String, String>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			result.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.testng.annotations.Test;
+
+public class FilterPredicateTest {
+
+	@Test
+	public void matchesText() {
+		assertTrue(FilterPredicate.compile(null, "CM").matches("Acme"));
+		assertTrue(FilterPredicate.compile("contains", "cm").matches("ACME"));
+		assertTrue(FilterPredicate.compile("startsWith", "ac").matches("Acme"));
+		assertFalse(FilterPredicate.compile("startsWith", "cm").matches("Acme"));
+		assertTrue(FilterPredicate.compile("exact", "acme").matches("ACME"));
+		assertFalse(FilterPredicate.compile("exact", "acm").matches("Acme"));
+		assertTrue(FilterPredicate.compile("in", "East, West").matches("west"));
+		assertFalse(FilterPredicate.compile("in", "East, West").matches("North"));
+		assertTrue(FilterPredicate.compile("regex", "^a.*e$").matches("Acme"));
+		assertFalse(FilterPredicate.compile("regex", "[").matches("["));
+		assertFalse(FilterPredicate.compile(null, "a").matches(null));
+	}
+
+	@Test
+	public void matchesNumberRanges() {
+		assertTrue(FilterPredicate.compile("range", ">100").matches(101));
+		assertFalse(FilterPredicate.compile("range", ">100").matches(100L));
+		assertTrue(FilterPredicate.compile("range", ">=100").matches(100.0));
+		assertTrue(FilterPredicate.compile("range", "<=5").matches(5));
+		assertFalse(FilterPredicate.compile("range", "<5").matches(5));
+		assertTrue(FilterPredicate.compile("range", "1..500").matches(500));
+		assertFalse(FilterPredicate.compile("range", "1..500").matches(0.5));
+		assertTrue(FilterPredicate.compile("range", "10..").matches(1e9));
+		assertTrue(FilterPredicate.compile("range", "..10").matches(-3));
+		assertTrue(FilterPredicate.compile("range", "42").matches("42"));
+		assertFalse(FilterPredicate.compile("range", "42").matches("abc"));
+		assertFalse(FilterPredicate.compile("range", ">").matches(1));
+	}
+
+	@Test
+	public void matchesDateRanges() {
+		final Date day = date(2016, Calendar.MARCH, 15, 13, 30);
+		assertTrue(FilterPredicate.compile("range", "2016-03-15").matches(day));
+		assertTrue(FilterPredicate.compile("range", "2016-03-01..2016-03-15").matches(day));
+		assertFalse(FilterPredicate.compile("range", "<2016-03-15").matches(day));
+		assertFalse(FilterPredicate.compile("range", ">2016-03-15").matches(day));
+		assertTrue(FilterPredicate.compile("range", ">2016-03-15 13:00").matches(day));
+		final Calendar calendar = Calendar.getInstance();
+		calendar.setTime(day);
+		assertTrue(FilterPredicate.compile("range", "2016-03-15..").matches(calendar));
+		assertFalse(FilterPredicate.compile("range", "2016-13-45").matches(day));
+	}
+
+	@Test
+	public void refinesNarrowerValues() {
+		assertTrue(FilterPredicate.refines("contains", "cm", "acme"));
+		assertFalse(FilterPredicate.refines("contains", "acme", "acm"));
+		assertTrue(FilterPredicate.refines("startsWith", "ac", "acme"));
+		assertFalse(FilterPredicate.refines("startsWith", "cm", "acme"));
+		assertTrue(FilterPredicate.refines("range", ">100", ">100"));
+		assertFalse(FilterPredicate.refines("range", ">100", ">1000"));
+	}
+
+	private static Date date(int year, int month, int day, int hour, int minute) {
+		final Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month, day, hour, minute);
+		return calendar.getTime();
+	}
+}
@@ -0,0 +1,181 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.lassitercg.faces.components.util.PropertyPath;
+import com.lassitercg.faces.components.util.VarWriter;
+
+public class ParallelRowEncoderTest {
+
+	private static final boolean[] PLAIN = { true, false, true, false };
+
+	private ExecutorService executor;
+
+	@BeforeClass
+	public void startExecutor() {
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@AfterClass
+	public void stopExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void matchesSerialOutput() throws Exception {
+		final List<Object> rows = randomRows(new Random(5), ParallelRowEncoder.CHUNK_SIZE * 3 + 17);
+		final TestConverter converter = new TestConverter();
+		final String[] serialKeys = new String[rows.size()];
+		final String serial = encodeSerially(rows, serialKeys);
+
+		final String[] rowKeys = new String[rows.size()];
+		final ParallelRowEncoder encoder = new ParallelRowEncoder(executor, new TestReader(rows, -1), converter,
+				PLAIN, rows);
+		assertEquals(encoder.getChunkCount(), 4);
+		final StringWriter writer = new StringWriter();
+		final VarWriter vwData = new VarWriter(writer, false);
+		for (int chunk = 0; chunk < encoder.getChunkCount(); chunk++) {
+			assertTrue(encoder.writeChunk(chunk, vwData, rowKeys));
+		}
+		vwData.closeVar();
+
+		assertEquals(writer.toString(), serial);
+		assertEquals(rowKeys, serialKeys);
+		// converters only ever run on the request thread
+		assertTrue(converter.calls > 0);
+		assertEquals(converter.threads.size(), 1);
+		assertTrue(converter.threads.containsKey(Thread.currentThread()));
+	}
+
+	@Test
+	public void reportsUnreadableChunks() throws Exception {
+		final List<Object> rows = randomRows(new Random(6), ParallelRowEncoder.CHUNK_SIZE * 2);
+		final int unresolved = ParallelRowEncoder.CHUNK_SIZE + 3;
+		final ParallelRowEncoder encoder = new ParallelRowEncoder(executor, new TestReader(rows, unresolved),
+				new TestConverter(), PLAIN, rows);
+		final String[] rowKeys = new String[rows.size()];
+		final VarWriter vwData = new VarWriter(new StringWriter(), false);
+		assertTrue(encoder.writeChunk(0, vwData, rowKeys));
+		assertFalse(encoder.writeChunk(1, vwData, rowKeys));
+		assertNotNull(rowKeys[0]);
+		assertEquals(rowKeys[unresolved], null);
+	}
+
+	@Test
+	public void reportsFailedChunks() throws Exception {
+		final List<Object> rows = randomRows(new Random(7), ParallelRowEncoder.CHUNK_SIZE + 1);
+		rows.set(ParallelRowEncoder.CHUNK_SIZE, null);
+		final ParallelRowEncoder encoder = new ParallelRowEncoder(executor, new TestReader(rows, -1),
+				new TestConverter(), PLAIN, rows);
+		final VarWriter vwData = new VarWriter(new StringWriter(), false);
+		assertTrue(encoder.writeChunk(0, vwData, new String[rows.size()]));
+		assertFalse(encoder.writeChunk(1, vwData, new String[rows.size()]));
+	}
+
+	/**
+	 * Encodes the rows as SheetRenderer.encodeRow does.
+	 */
+	private static String encodeSerially(List<Object> rows, String[] rowKeys) throws Exception {
+		final TestReader reader = new TestReader(rows, -1);
+		final TestConverter converter = new TestConverter();
+		final StringWriter writer = new StringWriter();
+		final VarWriter vwData = new VarWriter(writer, false);
+		for (int row = 0; row < rows.size(); row++) {
+			rowKeys[row] = reader.readRowKey(rows.get(row));
+			final Object rowData = reader.readRowData(rowKeys[row]);
+			final VarWriter vwRow = vwData.openArray();
+			for (int i = 0; i < PLAIN.length; i++) {
+				final Object value = reader.readCell(rowData, i);
+				final String text;
+				if (value == null) {
+					text = null;
+				} else if (PLAIN[i]) {
+					text = value.toString();
+				} else {
+					text = converter.getAsString(i, rowData, value);
+				}
+				vwRow.appendArrayValue(text, true);
+			}
+			vwRow.closeVar();
+		}
+		vwData.closeVar();
+		return writer.toString();
+	}
+
+	private static List<Object> randomRows(Random random, int count) {
+		final String[] names = { "plain", "quote\"'\\/", "été ", "<script>", "" };
+		final List<Object> rows = new ArrayList<Object>(count);
+		for (int row = 0; row < count; row++) {
+			final Object[] cells = new Object[PLAIN.length];
+			cells[0] = random.nextInt(8) == 0 ? null : names[random.nextInt(names.length)] + row;
+			cells[1] = random.nextInt(8) == 0 ? null : Long.valueOf(random.nextInt(100000));
+			cells[2] = Double.valueOf(random.nextDouble());
+			cells[3] = random.nextInt(8) == 0 ? null : names[random.nextInt(names.length)];
+			rows.add(new Object[] { "k" + row, cells });
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads rows of { key, cells }, unresolved at the row specified.
+	 */
+	private static class TestReader implements ParallelRowEncoder.RowReader {
+
+		private final Map<String, Object> rowsByKey = new HashMap<String, Object>();
+
+		private final Object unresolved;
+
+		TestReader(List<Object> rows, int unresolved) {
+			for (final Object row : rows) {
+				if (row != null) {
+					rowsByKey.put((String) ((Object[]) row)[0], row);
+				}
+			}
+			this.unresolved = unresolved < 0 ? null : rows.get(unresolved);
+		}
+
+		public String readRowKey(Object row) {
+			return (String) ((Object[]) row)[0];
+		}
+
+		public Object readRowData(String rowKey) {
+			return rowsByKey.get(rowKey);
+		}
+
+		public Object readCell(Object rowData, int i) {
+			if (rowData == unresolved) {
+				return PropertyPath.UNRESOLVED;
+			}
+			return ((Object[]) ((Object[]) rowData)[1])[i];
+		}
+	}
+
+	private static class TestConverter implements ParallelRowEncoder.CellConverter {
+
+		private final Map<Thread, Boolean> threads = new HashMap<Thread, Boolean>();
+
+		private int calls;
+
+		public String getAsString(int i, Object rowData, Object value) {
+			threads.put(Thread.currentThread(), Boolean.TRUE);
+			calls++;
+			return "#" + i + ":" + value + ":" + ((Object[]) rowData)[0];
+		}
+	}
+}
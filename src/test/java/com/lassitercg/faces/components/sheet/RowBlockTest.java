@@ -0,0 +1,104 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.primefaces.json.JSONArray;
+import org.testng.annotations.Test;
+
+import com.lassitercg.faces.components.util.RunLengthWriter;
+import com.lassitercg.faces.components.util.VarWriter;
+
+public class RowBlockTest {
+
+	@Test
+	public void coversViewInBlocks() {
+		int rows = 0;
+		int expectedFirst = 0;
+		for (int first = 0; first < 1005; first += 200) {
+			final RowBlock block = new RowBlock(first, 200, 1005);
+			assertEquals(block.getFirst(), expectedFirst);
+			assertEquals(block.getEnd(), block.getFirst() + block.getCount());
+			rows += block.getCount();
+			expectedFirst = block.getEnd();
+		}
+		assertEquals(rows, 1005);
+		assertEquals(new RowBlock(1000, 200, 1005).getCount(), 5);
+	}
+
+	@Test
+	public void clampsRequestsOutsideView() {
+		final RowBlock past = new RowBlock(2000, 200, 1005);
+		assertEquals(past.getFirst(), 1005);
+		assertEquals(past.getCount(), 0);
+		final RowBlock before = new RowBlock(-5, 200, 1005);
+		assertEquals(before.getFirst(), 0);
+		assertEquals(before.getCount(), 200);
+		assertEquals(new RowBlock(0, 200, 0).getCount(), 0);
+		assertEquals(new RowBlock(0, 200, 50).getCount(), 50);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsInvalidBlockSize() {
+		new RowBlock(0, 0, 10);
+	}
+
+	@Test
+	public void blockRunsMergeIntoWholeView() throws Exception {
+		final Random random = new Random(7);
+		final int rowCount = 1234;
+		final int[] styles = new int[rowCount];
+		for (int row = 0; row < rowCount; row++) {
+			// long runs with gaps, as conditional styles tend to be
+			styles[row] = row > 0 && random.nextInt(8) > 0 ? styles[row - 1] : random.nextInt(4) - 1;
+		}
+		for (final boolean valued : new boolean[] { true, false }) {
+			final int[] whole = new int[rowCount];
+			decode(encode(styles, new RowBlock(0, rowCount, rowCount), valued), whole, valued);
+
+			final int[] merged = new int[rowCount];
+			for (int first = 0; first < rowCount; first += 100) {
+				decode(encode(styles, new RowBlock(first, 100, rowCount), valued), merged, valued);
+			}
+			for (int row = 0; row < rowCount; row++) {
+				final int expected = styles[row] == RunLengthWriter.NONE ? 0 : valued ? styles[row] + 1 : 1;
+				assertEquals(whole[row], expected, "row " + row);
+				assertEquals(merged[row], expected, "row " + row);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the runs of the block with absolute row indexes, as the
+	 * renderer does.
+	 */
+	private static String encode(int[] styles, RowBlock block, boolean valued) throws Exception {
+		final StringWriter writer = new StringWriter();
+		final VarWriter array = new VarWriter(writer, false);
+		final RunLengthWriter runs = new RunLengthWriter(array, valued);
+		for (int row = block.getFirst(); row < block.getEnd(); row++) {
+			runs.append(row, valued || styles[row] == RunLengthWriter.NONE ? styles[row] : 0);
+		}
+		runs.flush();
+		array.closeVar();
+		return writer.toString();
+	}
+
+	/**
+	 * Fills the lookup from the runs as the widget does, with value + 1 for
+	 * valued runs and 1 for flagged ones.
+	 */
+	private static void decode(String json, int[] lookup, boolean valued) throws Exception {
+		final JSONArray runs = new JSONArray(json);
+		final int step = valued ? 3 : 2;
+		assertEquals(runs.length() % step, 0);
+		for (int i = 0; i < runs.length(); i += step) {
+			final int end = runs.getInt(i) + runs.getInt(i + 1);
+			for (int row = runs.getInt(i); row < end; row++) {
+				lookup[row] = valued ? runs.getInt(i + 2) + 1 : 1;
+			}
+		}
+	}
+}
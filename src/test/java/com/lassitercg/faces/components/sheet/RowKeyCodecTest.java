@@ -0,0 +1,111 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class RowKeyCodecTest {
+
+	@Test
+	public void encodesDefaultKeys() {
+		final RowKeyCodec codec = RowKeyCodec.forName(null);
+		assertEquals(codec.encode("a b\tc"), "r_abc");
+		assertEquals(codec.encode(42L), "r_42");
+		assertEquals(RowKeyCodec.forName("Default").encode("x"), "r_x");
+	}
+
+	@Test
+	public void encodesNumericKeys() {
+		final RowKeyCodec codec = RowKeyCodec.forName(RowKeyCodec.NUMERIC);
+		assertEquals(codec.encode(0), "r0");
+		assertEquals(codec.encode(35L), "rz");
+		assertEquals(codec.encode(-1), "n0");
+		assertEquals(codec.encode(" 36 "), "r10");
+		assertEquals(codec.encode(BigInteger.valueOf(36)), "r10");
+		assertEquals(codec.encode(Long.MIN_VALUE), "n" + Long.toString(Long.MAX_VALUE, 36));
+		final Set<String> keys = new HashSet<String>();
+		for (long i = -1000; i <= 1000; i++) {
+			assertTrue(keys.add(codec.encode(i)));
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsNonIntegralNumericKeys() {
+		RowKeyCodec.forName(RowKeyCodec.NUMERIC).encode(1.5);
+	}
+
+	@Test
+	public void encodesHashedKeys() {
+		final RowKeyCodec codec = RowKeyCodec.forName(RowKeyCodec.HASHED);
+		final String key = codec.encode(Arrays.asList("order", 17));
+		assertEquals(codec.encode(Arrays.asList("order", 17)), key);
+		assertEquals(codec.encode(new Object[] { "order", 17 }), key);
+		assertNotEquals(codec.encode(Arrays.asList("order", 71)), key);
+		assertTrue(key.matches("h[0-9a-z]+"), key);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsUnknownCodecs() {
+		RowKeyCodec.forName("base64");
+	}
+
+	@Test
+	public void findsCollisions() {
+		final RowKeyCodec codec = RowKeyCodec.forName(null);
+		final Object[] keys = { "a b", "c", "ab" };
+		final String collision = RowKeyCodec.findCollision(keys, index(codec, keys));
+		assertEquals(collision, "Row keys a b and ab both encode to r_ab");
+		// equal values are the same row key, arrays by their elements
+		final Object[] equal = { new Object[] { "x", 1 }, "c", new Object[] { "x", 1 } };
+		assertNull(RowKeyCodec.findCollision(equal, index(RowKeyCodec.forName(RowKeyCodec.HASHED), equal)));
+		assertNull(RowKeyCodec.findCollision(new Object[] { 1, 2 }, index(codec, new Object[] { 1, 2 })));
+	}
+
+	@Test
+	public void onlyLogsCollisionsOfTheDefaultCodec() {
+		assertFalse(RowKeyCodec.forName(null).isCollisionError());
+		assertTrue(RowKeyCodec.forName(RowKeyCodec.NUMERIC).isCollisionError());
+		assertTrue(RowKeyCodec.forName(RowKeyCodec.HASHED).isCollisionError());
+		assertTrue(new RowKeyCodec() {
+
+			@Override
+			public String encode(Object key) {
+				return "c";
+			}
+		}.isCollisionError());
+	}
+
+	@Test
+	public void serializesBuiltInCodecs() throws Exception {
+		for (final String name : new String[] { RowKeyCodec.DEFAULT, RowKeyCodec.NUMERIC, RowKeyCodec.HASHED }) {
+			final RowKeyCodec codec = RowKeyCodec.forName(name);
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(codec);
+			out.close();
+			final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			assertEquals(((RowKeyCodec) in.readObject()).encode(42), codec.encode(42));
+		}
+	}
+
+	private static RowKeyIndex index(RowKeyCodec codec, Object[] keys) {
+		final String[] encoded = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			encoded[i] = codec.encode(keys[i]);
+		}
+		return new RowKeyIndex(encoded);
+	}
+}
@@ -0,0 +1,72 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class RowKeyIndexTest {
+
+	@Test
+	public void findsRowsByKey() {
+		final String[] keys = new String[1000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "r_" + i;
+		}
+		final RowKeyIndex index = new RowKeyIndex(keys);
+		assertEquals(index.size(), 1000);
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(index.indexOf("r_" + i), i);
+		}
+		assertEquals(index.indexOf("r_1000"), -1);
+		assertEquals(index.indexOf(null), -1);
+		assertEquals(new RowKeyIndex(new String[0]).indexOf("r_0"), -1);
+	}
+
+	@Test
+	public void mapsRepeatedKeysToLastRow() {
+		final RowKeyIndex index = new RowKeyIndex(new String[] { "r_a", "r_b", "r_a", "r_c", "r_b" });
+		assertEquals(index.indexOf("r_a"), 2);
+		assertEquals(index.indexOf("r_b"), 4);
+		assertEquals(index.indexOf("r_c"), 3);
+
+		final Set<String> keySet = index.keySet();
+		assertEquals(keySet.size(), 3);
+		assertTrue(keySet.contains("r_a"));
+		assertFalse(keySet.contains("r_d"));
+		final List<String> keys = new ArrayList<String>(keySet);
+		assertEquals(keys.size(), 3);
+		assertTrue(keys.containsAll(Arrays.asList("r_a", "r_b", "r_c")));
+	}
+
+	@Test
+	public void rebuildsTableWhenDeserialized() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(new RowKeyIndex(new String[] { "r_1", "r_2", "r_3" }));
+		out.close();
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final RowKeyIndex index = (RowKeyIndex) in.readObject();
+		assertEquals(index.indexOf("r_2"), 1);
+		assertEquals(index.keySet().size(), 3);
+	}
+
+	@Test
+	public void hashesTheKeysInOrder() {
+		final int hash = new RowKeyIndex(new String[] { "r_1", "r_2" }).getKeysHash();
+		assertEquals(new RowKeyIndex(new String[] { "r_1", "r_2" }).getKeysHash(), hash);
+		assertNotEquals(new RowKeyIndex(new String[] { "r_2", "r_1" }).getKeysHash(), hash);
+		assertNotEquals(new RowKeyIndex(new String[] { "r_1", "r_3" }).getKeysHash(), hash);
+	}
+}
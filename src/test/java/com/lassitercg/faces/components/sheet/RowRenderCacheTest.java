@@ -0,0 +1,103 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class RowRenderCacheTest {
+
+	@Test
+	public void keepsRowsPerVersion() {
+		final RowRenderCache cache = new RowRenderCache(10);
+		cache.validate("en|0:-");
+		cache.put("r1", "1", new String[] { "a" });
+		assertEquals(cache.get("r1", "1"), new String[] { "a" });
+		assertNull(cache.get("r1", "2"));
+		assertNull(cache.get("r2", "1"));
+		cache.remove("r1");
+		assertNull(cache.get("r1", "1"));
+	}
+
+	@Test
+	public void dropsRowsWhenSignatureChanges() {
+		final RowRenderCache cache = new RowRenderCache(10);
+		cache.validate("en|0:-");
+		cache.put("r1", "1", new String[] { "a" });
+		cache.validate("en|0:-");
+		assertEquals(cache.size(), 1);
+		cache.validate("de|0:-");
+		assertEquals(cache.size(), 0);
+	}
+
+	@Test
+	public void boundsRows() {
+		final RowRenderCache cache = new RowRenderCache(2);
+		cache.validate("");
+		cache.put("r1", "1", new String[] { "a" });
+		cache.put("r2", "1", new String[] { "b" });
+		cache.put("r3", "1", new String[] { "c" });
+		assertEquals(cache.size(), 2);
+		assertNull(cache.get("r3", "1"));
+		// cached rows are still updated when full
+		cache.put("r1", "2", new String[] { "d" });
+		assertEquals(cache.get("r1", "2"), new String[] { "d" });
+		cache.retain(Arrays.asList("r2"));
+		assertEquals(cache.size(), 1);
+	}
+
+	@Test
+	public void keepsCachesOfRecentSheets() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		assertNull(RowRenderCache.forSheet(session, session, "view|sheet0", false));
+		assertTrue(session.isEmpty());
+		final RowRenderCache first = RowRenderCache.forSheet(session, session, "view|sheet0", true);
+		assertNotNull(first);
+		assertSame(RowRenderCache.forSheet(session, session, "view|sheet0", false), first);
+		for (int i = 1; i <= RowRenderCache.MAX_SHEETS; i++) {
+			RowRenderCache.forSheet(session, session, "view|sheet" + i, true);
+		}
+		assertNull(RowRenderCache.forSheet(session, session, "view|sheet0", false));
+		assertNotNull(RowRenderCache.forSheet(session, session, "view|sheet" + RowRenderCache.MAX_SHEETS, false));
+	}
+
+	@Test
+	public void describesConvertersByConfiguration() {
+		assertEquals(RowRenderCache.describe(null), "-");
+		assertEquals(RowRenderCache.describe(new PatternConverter("#,##0")),
+				RowRenderCache.describe(new PatternConverter("#,##0")));
+		assertFalse(RowRenderCache.describe(new PatternConverter("#,##0")).equals(
+				RowRenderCache.describe(new PatternConverter("0.00"))));
+		final FailingConverter failing = new FailingConverter();
+		assertEquals(RowRenderCache.describe(failing), RowRenderCache.describe(failing));
+		assertFalse(RowRenderCache.describe(failing).equals(RowRenderCache.describe(new FailingConverter())));
+	}
+
+	public static class PatternConverter {
+
+		private final String pattern;
+
+		PatternConverter(String pattern) {
+			this.pattern = pattern;
+		}
+
+		public String getPattern() {
+			return pattern;
+		}
+	}
+
+	public static class FailingConverter {
+
+		public String getPattern() {
+			throw new IllegalStateException("failing getter");
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class RowSorterTest {
+
+	@Test
+	public void parallelSortMatchesBeanPropertyComparator() {
+		final Random random = new Random(17);
+		final String[] words = { "apple", "Apple", "banana", "Éclair", "eclair", "zebra", "Zürich", "zurich" };
+		final int count = RowSorter.CHUNK_SIZE * 3 + 123;
+		final Object[][] keys = new Object[count][];
+		for (int i = 0; i < count; i++) {
+			// no null keys, so the sort may run in parallel
+			keys[i] = new Object[] { words[random.nextInt(words.length)], Integer.valueOf(random.nextInt(50)) };
+		}
+		for (final boolean ascending : new boolean[] { true, false }) {
+			final int[] parallel = indexes(count);
+			new RowSorter(Locale.ENGLISH).sort(parallel, keys, new boolean[] { ascending, true }, true);
+			final int[] sequential = indexes(count);
+			new RowSorter(Locale.ENGLISH).sort(sequential, keys, new boolean[] { ascending, true }, false);
+			final int[] expected = sortWithBeanPropertyComparator(keys, Locale.ENGLISH, ascending, true);
+			assertEquals(parallel, expected);
+			assertEquals(sequential, expected);
+		}
+	}
+
+	@Test
+	public void stringOrderMatchesBeanPropertyComparator() {
+		final Random random = new Random(19);
+		final String[] words = { "apple", "Apple", "APPLE", "äpple", "Banana", "banana", "cote", "côte", "coté",
+				"Côté", "I", "i", "ı", "İ", "zebra" };
+		for (final int size : new int[] { 300, 20 }) {
+			final Object[][] keys = new Object[size][];
+			for (int i = 0; i < size; i++) {
+				// a null equals any key, which the merge sort of longer lists
+				// rejects as inconsistent, with either comparator
+				final boolean isNull = size < 32 && random.nextInt(4) == 0;
+				keys[i] = new Object[] { isNull ? null : words[random.nextInt(words.length)] };
+			}
+			for (final Locale locale : new Locale[] { Locale.ENGLISH, Locale.FRENCH, new Locale("tr") }) {
+				for (final boolean ascending : new boolean[] { true, false }) {
+					final int[] rows = indexes(size);
+					new RowSorter(locale).sort(rows, keys, new boolean[] { ascending }, false);
+					assertEquals(rows, sortWithBeanPropertyComparator(keys, locale, ascending), locale + " "
+							+ ascending);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void lowerCasesBeforeCollating() {
+		// equal once lower cased, so ties keep their order
+		final Object[][] keys = { { "b" }, { "B" }, { "a" }, { "A" } };
+		final int[] rows = indexes(keys.length);
+		new RowSorter(Locale.ENGLISH).sort(rows, keys, new boolean[] { true }, false);
+		assertEquals(rows, new int[] { 2, 3, 0, 1 });
+	}
+
+	@Test
+	public void keepsNullsInPlace() {
+		// a null key compares equal to any other key, as with a null sort
+		// order of 0
+		final Object[][] keys = { { null }, { null } };
+		final int[] rows = indexes(keys.length);
+		new RowSorter(Locale.ENGLISH).sort(rows, keys, new boolean[] { false }, false);
+		assertEquals(rows, new int[] { 0, 1 });
+		final Object[][] mixed = { { "b" }, { null }, { "a" } };
+		final int[] mixedRows = indexes(mixed.length);
+		new RowSorter(Locale.ENGLISH).sort(mixedRows, mixed, new boolean[] { true }, true);
+		assertEquals(mixedRows, sortWithBeanPropertyComparator(mixed, Locale.ENGLISH, true));
+	}
+
+	@Test
+	public void sortsByMultipleColumns() {
+		final Object[][] keys = { { "b", 2 }, { "a", 1 }, { "b", 1 }, { "a", 2 }, { "B", 1 }, { "a", 1 } };
+		final int[] rows = indexes(keys.length);
+		new RowSorter(Locale.ENGLISH).sort(rows, keys, new boolean[] { true, false }, false);
+		assertEquals(rows, new int[] { 3, 1, 5, 0, 2, 4 });
+
+		final Random random = new Random(23);
+		final Object[][] randomKeys = new Object[2000][];
+		for (int i = 0; i < randomKeys.length; i++) {
+			randomKeys[i] = new Object[] { "k" + random.nextInt(5), Integer.valueOf(random.nextInt(5)),
+					Long.valueOf(random.nextInt(5)) };
+		}
+		final boolean[] ascending = { false, true, false };
+		final int[] randomRows = indexes(randomKeys.length);
+		new RowSorter(Locale.ENGLISH).sort(randomRows, randomKeys, ascending, false);
+		assertEquals(randomRows, sortWithBeanPropertyComparator(randomKeys, Locale.ENGLISH, ascending));
+	}
+
+	@Test
+	public void collatesInSortLocale() {
+		final Object[][] keys = { { "ö" }, { "z" }, { "o" }, { "a" }, { "å" }, { "ä" } };
+		final int[] swedish = indexes(keys.length);
+		new RowSorter(new Locale("sv")).sort(swedish, keys, new boolean[] { true }, false);
+		// å, ä and ö are letters of their own after z
+		assertEquals(swedish, new int[] { 3, 2, 1, 4, 5, 0 });
+		final int[] german = indexes(keys.length);
+		new RowSorter(Locale.GERMAN).sort(german, keys, new boolean[] { true }, false);
+		// umlauts sort with their base letter
+		assertEquals(german, new int[] { 3, 4, 5, 2, 0, 1 });
+	}
+
+	@Test
+	public void collatesWithStrength() {
+		final Object[][] keys = { { "côte" }, { "cote" }, { "Cote" } };
+		final int[] tertiary = indexes(keys.length);
+		new RowSorter(Locale.FRENCH, RowSorter.TERTIARY).sort(tertiary, keys, new boolean[] { true }, false);
+		assertEquals(tertiary, new int[] { 1, 2, 0 });
+		// accents are ignored, so all are equal and keep their order
+		final int[] primary = indexes(keys.length);
+		new RowSorter(Locale.FRENCH, RowSorter.PRIMARY).sort(primary, keys, new boolean[] { true }, false);
+		assertEquals(primary, new int[] { 0, 1, 2 });
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsInvalidStrength() {
+		new RowSorter(Locale.ENGLISH, "strong");
+	}
+
+	private static int[] indexes(int count) {
+		final int[] rows = new int[count];
+		for (int i = 0; i < count; i++) {
+			rows[i] = i;
+		}
+		return rows;
+	}
+
+	/**
+	 * Sorts the rows as chained PrimeFaces BeanPropertyComparators did, one
+	 * per key, with a null sort order of 0.
+	 */
+	private static int[] sortWithBeanPropertyComparator(final Object[][] keys, Locale locale,
+			final boolean... ascending) {
+		final List<Integer> rows = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++) {
+			rows.add(i);
+		}
+		final BeanPropertyComparator[] comparators = new BeanPropertyComparator[ascending.length];
+		for (int level = 0; level < ascending.length; level++) {
+			comparators[level] = new BeanPropertyComparator(level, ascending[level], locale);
+		}
+		Collections.sort(rows, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				for (final BeanPropertyComparator comparator : comparators) {
+					final int result = comparator.compare(keys[a], keys[b]);
+					if (result != 0) {
+						return result;
+					}
+				}
+				return 0;
+			}
+		});
+		final int[] result = new int[rows.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = rows.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * The comparison of org.primefaces.model.BeanPropertyComparator for a
+	 * case insensitive sort.
+	 */
+	private static class BeanPropertyComparator implements Comparator<Object[]> {
+
+		private final int level;
+
+		private final boolean ascending;
+
+		private final Locale locale;
+
+		private final Collator collator;
+
+		private final int nullSortOrder = 0;
+
+		BeanPropertyComparator(int level, boolean ascending, Locale locale) {
+			this.level = level;
+			this.ascending = ascending;
+			this.locale = locale;
+			this.collator = Collator.getInstance(locale);
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public int compare(Object[] row1, Object[] row2) {
+			final Object value1 = row1[level];
+			final Object value2 = row2[level];
+			final int result;
+			if (value1 == null && value2 == null) {
+				return 0;
+			} else if (value1 == null) {
+				result = nullSortOrder;
+			} else if (value2 == null) {
+				result = -1 * nullSortOrder;
+			} else if (value1 instanceof String && value2 instanceof String) {
+				result = collator.compare(((String) value1).toLowerCase(locale), ((String) value2).toLowerCase(locale));
+			} else {
+				result = ((Comparable) value1).compareTo(value2);
+			}
+			return ascending ? result : -1 * result;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class SessionLruTest {
+
+	@Test
+	public void createsOneMapPerSession() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		assertNull(SessionLru.get(session, null, "caches", 2, false));
+		final SessionLru<String> map = SessionLru.get(session, session, "caches", 2, true);
+		assertSame(session.get("caches"), map);
+		assertSame(SessionLru.get(session, session, "caches", 2, true), map);
+		assertSame(SessionLru.<String> get(session, null, "caches", 2, false), map);
+	}
+
+	@Test
+	public void dropsLeastRecentlyUsedEntries() {
+		final SessionLru<String> map = new SessionLru<String>(2);
+		map.put("a", "1");
+		map.put("b", "2");
+		map.get("a");
+		map.put("c", "3");
+		assertEquals(map.size(), 2);
+		assertNull(map.get("b"));
+		assertEquals(map.get("a"), "1");
+	}
+
+	@Test
+	public void keepsTheValueHeld() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		assertEquals(SessionLru.putIfAbsent(session, session, "data", "first"), "first");
+		assertEquals(SessionLru.putIfAbsent(session, session, "data", "second"), "first");
+	}
+}
@@ -0,0 +1,54 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.testng.annotations.Test;
+
+public class SheetExecutorTest {
+
+	@Test
+	public void runsTasksInOrder() {
+		final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 20; i++) {
+			final int value = i;
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					return value;
+				}
+			});
+		}
+		final List<Integer> results = SheetExecutor.invokeAll(tasks);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(results.get(i).intValue(), i);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rethrowsTaskFailures() {
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		tasks.add(new Callable<Object>() {
+			public Object call() {
+				throw new IllegalArgumentException("failed task");
+			}
+		});
+		SheetExecutor.invokeAll(tasks);
+	}
+
+	@Test
+	public void restartsAfterShutdown() {
+		final ExecutorService executor = SheetExecutor.get();
+		new SheetExecutorListener().contextDestroyed(null);
+		assertTrue(executor.isShutdown());
+		final ExecutorService restarted = SheetExecutor.get();
+		assertNotSame(restarted, executor);
+		assertFalse(restarted.isShutdown());
+	}
+}
@@ -0,0 +1,66 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class SheetStateTest {
+
+	@Test
+	public void untouchedSheetSavesNothing() {
+		// rendered with fixed columns, so the column mapping is known
+		assertNull(SheetState.save(true, null, new CellMap<String>(), new CellMap<Object>(),
+				new ArrayList<BadUpdate>(), new int[] { 0, 1, 2 }, true, null));
+		assertNull(SheetState.save(true, null, new CellMap<String>(), new CellMap<Object>(), null, null, false,
+				null));
+	}
+
+	@Test
+	public void savesChangedFieldsOnly() {
+		final CellMap<String> submitted = new CellMap<String>();
+		submitted.put("r_1", 0, "a");
+		final Object[] values = SheetState.save(true, null, submitted, new CellMap<Object>(), null,
+				new int[] { 0, 2 }, true, null);
+		assertNotNull(values);
+		assertSame(values[1], submitted);
+		assertNull(values[2]);
+		assertNull(values[3]);
+		assertNull(values[4]);
+		assertNull(values[5]);
+
+		final int[] mapping = { 0, 2 };
+		final Object[] withMapping = SheetState.save(true, null, new CellMap<String>(), new CellMap<Object>(), null,
+				mapping, false, null);
+		assertNull(withMapping[1]);
+		assertSame(withMapping[4], mapping);
+
+		final ViewCache view = new ViewCache(new int[] { 1, 0 }, new RowKeyIndex(new String[] { "r_1", "r_2" }),
+				false);
+		assertSame(SheetState.save(true, null, new CellMap<String>(), new CellMap<Object>(), null, null, true,
+				view)[5], view);
+
+		final Object inputState = new Object[] { "value" };
+		assertSame(SheetState.save(true, inputState, new CellMap<String>(), new CellMap<Object>(), null, null,
+				true, null)[0], inputState);
+	}
+
+	@Test
+	public void fullStateSavesAllFields() {
+		final CellMap<String> submitted = new CellMap<String>();
+		final CellMap<Object> local = new CellMap<Object>();
+		final List<BadUpdate> badUpdates = new ArrayList<BadUpdate>();
+		final Object[] values = SheetState.save(false, null, submitted, local, badUpdates, new int[] { 0 }, true,
+				null);
+		assertEquals(values.length, SheetState.SIZE);
+		assertSame(values[1], submitted);
+		assertSame(values[2], local);
+		assertSame(values[3], badUpdates);
+		assertNull(values[4]);
+	}
+}
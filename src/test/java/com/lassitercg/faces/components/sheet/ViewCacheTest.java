@@ -0,0 +1,40 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ViewCacheTest {
+
+	@Test
+	public void holdsViewsByKey() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		assertNull(ViewCache.get(session, "/page.xhtml|form:sheet|k1"));
+		final ViewCache view = new ViewCache(new int[] { 1, 0 }, new RowKeyIndex(new String[] { "r_1", "r_2" }),
+				false);
+		ViewCache.put(session, session, "/page.xhtml|form:sheet|k1", view);
+		assertSame(ViewCache.get(session, "/page.xhtml|form:sheet|k1"), view);
+		assertNull(ViewCache.get(session, "/page.xhtml|form:sheet|k2"));
+
+		final ViewCache updated = new ViewCache(new int[] { 0, 1 }, view.getRowKeyIndex(), false);
+		ViewCache.put(session, session, "/page.xhtml|form:sheet|k1", updated);
+		assertSame(ViewCache.get(session, "/page.xhtml|form:sheet|k1"), updated);
+		ViewCache.remove(session, "/page.xhtml|form:sheet|k1");
+		assertNull(ViewCache.get(session, "/page.xhtml|form:sheet|k1"));
+	}
+
+	@Test
+	public void keepsRecentViewsOnly() {
+		final Map<String, Object> session = new HashMap<String, Object>();
+		final RowKeyIndex index = new RowKeyIndex(new String[] { "r_1" });
+		for (int i = 0; i <= ViewCache.MAX_VIEWS; i++) {
+			ViewCache.put(session, session, "view" + i, new ViewCache(new int[] { 0 }, index, false));
+		}
+		assertNull(ViewCache.get(session, "view0"));
+		assertSame(ViewCache.get(session, "view1").getRowKeyIndex(), index);
+	}
+}
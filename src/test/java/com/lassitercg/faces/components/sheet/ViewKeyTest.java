@@ -0,0 +1,90 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+import java.util.Locale;
+
+import org.testng.annotations.Test;
+
+public class ViewKeyTest {
+
+	@Test
+	public void isStableForTheSameView() {
+		assertEquals(key().getKey(), key().getKey());
+		// codecs are told apart by class, not by instance
+		assertEquals(new ViewKey("1").codec(new CustomCodec()).getKey(),
+				new ViewKey("1").codec(new CustomCodec()).getKey());
+	}
+
+	@Test
+	public void changesWithTheSort() {
+		final String key = key().getKey();
+		assertNotEquals(base().sortBy("#{row.name}", "descending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.city}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().filter(1, "contains", "#{row.city}", "ro").collation(Locale.ENGLISH, "primary")
+				.codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.GERMAN, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "tertiary").codec(RowKeyCodec.forName(null)).getKey(), key);
+	}
+
+	@Test
+	public void changesWithTheFilter() {
+		final String key = key().getKey();
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "rom")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "startsWith", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(2, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.town}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").collation(Locale.ENGLISH, "primary")
+				.codec(RowKeyCodec.forName(null)).getKey(), key);
+	}
+
+	@Test
+	public void changesWithTheCodec() {
+		final String key = key().getKey();
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(RowKeyCodec.NUMERIC)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(RowKeyCodec.HASHED)).getKey(), key);
+		assertNotEquals(base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(new CustomCodec()).getKey(), key);
+	}
+
+	@Test
+	public void changesWithTheDataVersion() {
+		assertNotEquals(new ViewKey("2").sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null)).getKey(), key().getKey());
+	}
+
+	@Test
+	public void keepsPartsApart() {
+		assertNotEquals(ViewKey.hash("a|", "b"), ViewKey.hash("a", "|b"));
+		assertNotEquals(ViewKey.hash("a", "b"), ViewKey.hash("ab", ""));
+		assertEquals(ViewKey.hash("a", "b"), ViewKey.hash("a", "b"));
+	}
+
+	private static ViewKey base() {
+		return new ViewKey("1");
+	}
+
+	private static ViewKey key() {
+		return base().sortBy("#{row.name}", "ascending").filter(1, "contains", "#{row.city}", "ro")
+				.collation(Locale.ENGLISH, "primary").codec(RowKeyCodec.forName(null));
+	}
+
+	private static class CustomCodec extends RowKeyCodec {
+
+		@Override
+		public String encode(Object key) {
+			return "c".concat(key.toString());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.lassitercg.faces.components.sheet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class ViewUpdaterTest {
+
+	private static final String[] WORDS = { "apple", "Apple", "banana", "Éclair", "eclair", "zebra", "Zürich" };
+
+	@Test
+	public void sortedUpdateMatchesFullSortAndFilter() {
+		final Random random = new Random(23);
+		final RowSorter sorter = new RowSorter(Locale.ENGLISH);
+		for (int trial = 0; trial < 200; trial++) {
+			final TestRows rows = new TestRows(random, 1 + random.nextInt(120));
+			final boolean[] ascending = { random.nextBoolean(), random.nextBoolean() };
+			final int[] view = sortAndFilter(sorter, rows, ascending);
+
+			final BitSet changed = rows.change(random);
+			final int[] updated = new ViewUpdater(sorter, ascending).update(view, changed, rows);
+			assertEquals(updated, sortAndFilter(sorter, rows, ascending), "trial " + trial);
+		}
+	}
+
+	@Test
+	public void unsortedUpdateMatchesFullFilter() {
+		final Random random = new Random(29);
+		for (int trial = 0; trial < 200; trial++) {
+			final TestRows rows = new TestRows(random, 1 + random.nextInt(120));
+			final int[] view = filter(rows);
+
+			final BitSet changed = rows.change(random);
+			assertEquals(new ViewUpdater().update(view, changed, rows), filter(rows), "trial " + trial);
+		}
+	}
+
+	@Test
+	public void placesTiesInRowOrder() {
+		final RowSorter sorter = new RowSorter(Locale.ENGLISH);
+		final TestRows rows = new TestRows(new String[] { "b", "a", "B", "a", "b", "A" });
+		for (final boolean ascending : new boolean[] { true, false }) {
+			final int[] view = sortAndFilter(sorter, rows, new boolean[] { ascending, true });
+			// the changed rows compare equal to others ignoring case, and go
+			// back between them by row index
+			final BitSet changed = new BitSet();
+			changed.set(0);
+			changed.set(3);
+			changed.set(4);
+			final int[] updated = new ViewUpdater(sorter, new boolean[] { ascending, true }).update(view, changed,
+					rows);
+			assertEquals(updated, ascending ? new int[] { 1, 3, 5, 0, 2, 4 } : new int[] { 0, 2, 4, 1, 3, 5 });
+		}
+	}
+
+	@Test
+	public void rebuildsForNullKeys() {
+		final RowSorter sorter = new RowSorter(Locale.ENGLISH);
+		final TestRows rows = new TestRows(new String[] { "b", "a", "c", "d" });
+		final int[] view = sortAndFilter(sorter, rows, new boolean[] { true, true });
+		rows.names[2] = null;
+		final BitSet changed = new BitSet();
+		changed.set(2);
+		assertNull(new ViewUpdater(sorter, new boolean[] { true, true }).update(view, changed, rows));
+	}
+
+	private static int[] filter(TestRows rows) {
+		final int[] result = new int[rows.names.length];
+		int size = 0;
+		for (int row = 0; row < result.length; row++) {
+			if (rows.matches(row)) {
+				result[size++] = row;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	private static int[] sortAndFilter(RowSorter sorter, TestRows rows, boolean[] ascending) {
+		final int[] result = filter(rows);
+		final Object[][] keys = new Object[result.length][];
+		for (int i = 0; i < result.length; i++) {
+			keys[i] = rows.getKeys(result[i]);
+		}
+		sorter.sort(result, keys, ascending, false);
+		return result;
+	}
+
+	/**
+	 * Rows with a name and an amount, sorted by both, matching the filter if
+	 * the amount is not a multiple of 3.
+	 */
+	private static class TestRows implements ViewUpdater.Rows {
+
+		private final String[] names;
+
+		private final int[] amounts;
+
+		TestRows(Random random, int size) {
+			names = new String[size];
+			amounts = new int[size];
+			for (int row = 0; row < size; row++) {
+				names[row] = WORDS[random.nextInt(WORDS.length)];
+				amounts[row] = random.nextInt(8);
+			}
+		}
+
+		TestRows(String[] names) {
+			this.names = names;
+			this.amounts = new int[names.length];
+			Arrays.fill(amounts, 1);
+		}
+
+		/**
+		 * Changes some rows, some of them into or out of the filter.
+		 */
+		BitSet change(Random random) {
+			final BitSet changed = new BitSet();
+			final int count = 1 + random.nextInt(Math.min(names.length, 10));
+			for (int i = 0; i < count; i++) {
+				final int row = random.nextInt(names.length);
+				changed.set(row);
+				if (random.nextBoolean()) {
+					names[row] = WORDS[random.nextInt(WORDS.length)];
+				} else {
+					amounts[row] = random.nextInt(8);
+				}
+			}
+			return changed;
+		}
+
+		public boolean matches(int row) {
+			return amounts[row] % 3 != 0;
+		}
+
+		public Object[] getKeys(int row) {
+			return new Object[] { names[row], Integer.valueOf(amounts[row]) };
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class CellDeltaReaderTest {
+
+	@Test
+	public void readsChanges() {
+		final List<String> cells = new ArrayList<String>();
+		final int count = new CellDeltaReader().read(
+				" { \"r0_c1\" : [0, 1, \"old\", \"a \\\"b\\\" \\u00e9\\n\", \"r_1\"],"
+						+ "\"r\\u0032_c0\":[2,0,null,12.50,\"r_x\"],\"r3_c2\":[3,2,\"x\",null,\"r_3\"],"
+						+ "\"r4_c2\":[4,2,1,true,\"r_4\",\"extra\"]}",
+				collect(cells));
+		assertEquals(count, 4);
+		assertEquals(cells.get(0), "r_1/1/a \"b\" é\n");
+		assertEquals(cells.get(1), "r_x/0/12.50");
+		assertEquals(cells.get(2), "r_3/2/null");
+		assertEquals(cells.get(3), "r_4/2/true");
+		assertEquals(new CellDeltaReader().read("{}", collect(cells)), 0);
+	}
+
+	@Test
+	public void rejectsMalformedChanges() {
+		assertRejected("");
+		assertRejected("[]");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\"]}");
+		assertRejected("{\"r0_c0\":[0,\"x\",\"a\",\"b\",\"r_0\"]}");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",{},\"r_0\"]}");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\",\"r_0\"]");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\\x\",\"r_0\"]}");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\",\"r_0\"]} x");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\",\"r_0\"],}");
+	}
+
+	@Test
+	public void rejectsOversizeChanges() {
+		final List<String> cells = new ArrayList<String>();
+		final String change = "{\"a\":[0,0,\"a\",\"b\",\"r_0\"],\"b\":[0,1,\"a\",\"b\",\"r_0\"]}";
+		try {
+			new CellDeltaReader(change.length() - 1, 10).read(change, collect(cells));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(cells.size(), 0);
+		}
+		try {
+			new CellDeltaReader(change.length(), 1).read(change, collect(cells));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(cells.size(), 0);
+		}
+	}
+
+	@Test
+	public void appliesNoChangesOfRejectedPayload() {
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\",\"r_0\"],\"r0_c1\":[0,1,\"a\",\"b\"]}");
+		assertRejected("{\"r0_c0\":[0,0,\"a\",\"b\",\"r_0\"]} x");
+	}
+
+	private static void assertRejected(String json) {
+		final List<String> cells = new ArrayList<String>();
+		try {
+			new CellDeltaReader().read(json, collect(cells));
+			fail(json);
+		} catch (IllegalArgumentException e) {
+			assertEquals(cells.size(), 0, json);
+		}
+	}
+
+	private static CellDeltaReader.Handler collect(final List<String> cells) {
+		return new CellDeltaReader.Handler() {
+			public void cell(String rowKey, int col, String newValue) {
+				cells.add(rowKey + "/" + col + "/" + newValue);
+			}
+		};
+	}
+}
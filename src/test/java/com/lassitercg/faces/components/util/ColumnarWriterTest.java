@@ -0,0 +1,75 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.primefaces.json.JSONArray;
+import org.primefaces.json.JSONObject;
+import org.testng.annotations.Test;
+
+public class ColumnarWriterTest {
+
+	@Test
+	public void roundTripsColumns() throws Exception {
+		final Random random = new Random(3);
+		final int rows = 500;
+		final String[][] columns = new String[4][rows];
+		final String[] currencies = { "USD", "EUR", null, "quote\"'\\/<" };
+		for (int row = 0; row < rows; row++) {
+			columns[0][row] = "name " + row;
+			columns[1][row] = currencies[random.nextInt(currencies.length)];
+			columns[2][row] = random.nextInt(10) == 0 ? "été\n" + random.nextInt(3) : null;
+			columns[3][row] = Integer.toString(random.nextInt(1000000));
+		}
+
+		final JSONObject data = new JSONObject(write(columns, rows));
+		assertEquals(data.getInt("rows"), rows);
+		final JSONArray cols = data.getJSONArray("cols");
+		assertEquals(cols.length(), columns.length);
+		// unique names stay plain, the repetitive columns use a dictionary
+		assertTrue(cols.getJSONObject(0).has("v"));
+		assertTrue(cols.getJSONObject(1).has("d"));
+		assertTrue(cols.getJSONObject(2).has("d"));
+		assertEquals(cols.getJSONObject(1).getJSONArray("d").length(), currencies.length);
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < columns.length; col++) {
+				final String expected = columns[col][row] == null ? "" : columns[col][row];
+				assertEquals(expandCell(cols.getJSONObject(col), row), expected, "row " + row + " col " + col);
+			}
+		}
+	}
+
+	@Test
+	public void writesEmptyData() throws Exception {
+		final JSONObject data = new JSONObject(write(new String[2][0], 0));
+		assertEquals(data.getInt("rows"), 0);
+		assertEquals(data.getJSONArray("cols").length(), 2);
+		assertEquals(new JSONObject(write(new String[0][0], 0)).getJSONArray("cols").length(), 0);
+	}
+
+	private static String write(String[][] columns, int rows) throws Exception {
+		final StringWriter writer = new StringWriter();
+		final ColumnarWriter columnar = new ColumnarWriter(writer, rows);
+		final String[] cells = new String[rows];
+		for (final String[] column : columns) {
+			// the cells array is reused between columns, as by the renderer
+			System.arraycopy(column, 0, cells, 0, rows);
+			columnar.appendColumn(cells);
+		}
+		columnar.close();
+		return writer.toString();
+	}
+
+	/**
+	 * Expands a cell from a column, as the widget does.
+	 */
+	private static String expandCell(JSONObject col, int row) throws Exception {
+		if (col.has("d")) {
+			return col.getJSONArray("d").getString(col.getJSONArray("i").getInt(row));
+		}
+		return col.getJSONArray("v").getString(row);
+	}
+}
@@ -0,0 +1,48 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.testng.annotations.Test;
+
+public class EcmaScriptEscaperTest {
+
+	private static final String[] VALUES = { "", "plain text 123", "it's \"quoted\"", "a\\b/c", "\b\t\n\f\r",
+			"\u0000\u001f\u007f\u0080", "caf\u00e9 \u20ac \uffff", "</script>", "trailing\n" };
+
+	@Test
+	public void matchesStringEscapeUtils() throws IOException {
+		for (final String value : VALUES) {
+			// single quotes are escaped as unicode for JSON
+			final String expected = StringEscapeUtils.escapeEcmaScript(value).replace("\\'", "\\u0027");
+			assertEquals(EcmaScriptEscaper.escape(value), expected);
+
+			final StringBuilder sb = new StringBuilder("x");
+			EcmaScriptEscaper.escape(value, sb);
+			assertEquals(sb.toString(), "x" + expected);
+
+			final StringWriter writer = new StringWriter();
+			EcmaScriptEscaper.escape(value, writer);
+			assertEquals(writer.toString(), expected);
+		}
+	}
+
+	@Test
+	public void returnsSameInstanceWhenNothingToEscape() {
+		final String value = "nothing to escape";
+		assertSame(EcmaScriptEscaper.escape(value), value);
+	}
+
+	@Test
+	public void escapesSurrogatePairs() throws IOException {
+		final String value = "a\ud83d\ude00b";
+		assertEquals(EcmaScriptEscaper.escape(value), "a\\uD83D\\uDE00b");
+		final StringWriter writer = new StringWriter();
+		EcmaScriptEscaper.escape(value, writer);
+		assertEquals(writer.toString(), "a\\uD83D\\uDE00b");
+	}
+}
@@ -0,0 +1,166 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class PropertyPathTest {
+
+	@Test
+	public void compilesPlainPropertyPaths() {
+		assertNotNull(PropertyPath.compile("#{row.name}", "row"));
+		assertNotNull(PropertyPath.compile("${row.account.name}", "row"));
+		assertNotNull(PropertyPath.compile("#{ row.account.name }", "row"));
+		assertNull(PropertyPath.compile("#{row}", "row"));
+		assertNull(PropertyPath.compile("#{other.name}", "row"));
+		assertNull(PropertyPath.compile("#{row.items[0]}", "row"));
+		assertNull(PropertyPath.compile("#{row.amount + 1}", "row"));
+		assertNull(PropertyPath.compile("#{row.empty}", "row"));
+		assertNull(PropertyPath.compile("#{row..name}", "row"));
+		assertNull(PropertyPath.compile("row.name", "row"));
+		assertNull(PropertyPath.compile("#{row.name}", null));
+		assertNull(PropertyPath.compile(null, "row"));
+	}
+
+	@Test
+	public void readsNestedProperties() {
+		final Row row = new Row("r1", new Account("ACME", 12));
+		assertEquals(PropertyPath.compile("#{row.id}", "row").getValue(row), "r1");
+		assertEquals(PropertyPath.compile("#{row.account.name}", "row").getValue(row), "ACME");
+		assertEquals(PropertyPath.compile("#{row.account.balance}", "row").getValue(row), 12);
+		assertEquals(PropertyPath.compile("#{row.active}", "row").getValue(row), Boolean.TRUE);
+	}
+
+	@Test
+	public void resolvesNullIntermediatesToNull() {
+		final PropertyPath path = PropertyPath.compile("#{row.account.name}", "row");
+		assertNull(path.getValue(new Row("r1", null)));
+		assertNull(path.getValue(null));
+		assertNull(PropertyPath.compile("#{row.account.owner.name}", "row").getValue(new Row("r1",
+				new Account("ACME", 0))));
+	}
+
+	@Test
+	public void readsMapsByKey() {
+		final Map<String, Object> account = new HashMap<String, Object>();
+		account.put("name", "ACME");
+		final Map<String, Object> row = new HashMap<String, Object>();
+		row.put("account", account);
+		assertEquals(PropertyPath.compile("#{row.account.name}", "row").getValue(row), "ACME");
+		assertNull(PropertyPath.compile("#{row.account.missing}", "row").getValue(row));
+		final Row bean = new Row("r1", null);
+		bean.getAttributes().put("color", "red");
+		assertEquals(PropertyPath.compile("#{row.attributes.color}", "row").getValue(bean), "red");
+	}
+
+	@Test
+	public void reportsUnresolvableSteps() {
+		final Row row = new Row("r1", new Account("ACME", 1));
+		assertSame(PropertyPath.compile("#{row.missing}", "row").getValue(row), PropertyPath.UNRESOLVED);
+		assertSame(PropertyPath.compile("#{row.account.missing.name}", "row").getValue(row),
+				PropertyPath.UNRESOLVED);
+		// a throwing getter is left to the expression to report
+		assertSame(PropertyPath.compile("#{row.failing}", "row").getValue(row), PropertyPath.UNRESOLVED);
+	}
+
+	@Test
+	public void writesNestedProperties() {
+		final Account account = new Account("ACME", 1);
+		final Row row = new Row("r1", account);
+		// no coercion needed, so no expression factory
+		assertTrue(PropertyPath.compile("#{row.account.name}", "row").setValue(row, "Initech", null));
+		assertEquals(account.getName(), "Initech");
+		assertTrue(PropertyPath.compile("#{row.account.balance}", "row").setValue(row, 5, null));
+		assertEquals(account.getBalance(), 5);
+		assertTrue(PropertyPath.compile("#{row.attributes.color}", "row").setValue(row, "blue", null));
+		assertEquals(row.getAttributes().get("color"), "blue");
+	}
+
+	@Test
+	public void fallsBackWhenNotWritable() {
+		final Row row = new Row("r1", null);
+		assertFalse(PropertyPath.compile("#{row.account.name}", "row").setValue(row, "ACME", null));
+		assertFalse(PropertyPath.compile("#{row.id}", "row").setValue(row, "r2", null));
+		assertFalse(PropertyPath.compile("#{row.missing}", "row").setValue(row, "x", null));
+		assertFalse(PropertyPath.compile("#{row.failing}", "row").setValue(row, "x", null));
+		assertEquals(row.getId(), "r1");
+	}
+
+	public static class Row {
+
+		private final String id;
+
+		private final Account account;
+
+		private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+		Row(String id, Account account) {
+			this.id = id;
+			this.account = account;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Account getAccount() {
+			return account;
+		}
+
+		public boolean isActive() {
+			return true;
+		}
+
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		public String getFailing() {
+			throw new IllegalStateException("failing getter");
+		}
+
+		public void setFailing(String value) {
+			throw new IllegalStateException("failing setter");
+		}
+	}
+
+	private static class Account {
+
+		private String name;
+
+		private int balance;
+
+		Account(String name, int balance) {
+			this.name = name;
+			this.balance = balance;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public int getBalance() {
+			return balance;
+		}
+
+		public void setBalance(int balance) {
+			this.balance = balance;
+		}
+
+		public Account getOwner() {
+			return null;
+		}
+	}
+}
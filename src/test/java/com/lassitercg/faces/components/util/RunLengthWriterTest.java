@@ -0,0 +1,104 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.primefaces.json.JSONArray;
+import org.testng.annotations.Test;
+
+public class RunLengthWriterTest {
+
+	@Test
+	public void writesRuns() throws Exception {
+		final StringWriter writer = new StringWriter();
+		final VarWriter array = new VarWriter(writer, false);
+		final RunLengthWriter runs = new RunLengthWriter(array, true);
+		final int[] values = { 0, 0, 0, RunLengthWriter.NONE, 1, 1, 0, RunLengthWriter.NONE, RunLengthWriter.NONE };
+		for (int row = 0; row < values.length; row++) {
+			runs.append(row, values[row]);
+		}
+		runs.appendRun(20, 5, 2);
+		runs.appendRun(30, 0, 2);
+		runs.appendRun(31, 5, RunLengthWriter.NONE);
+		runs.flush();
+		array.closeVar();
+		assertEquals(writer.toString(), "[0,3,0,4,2,1,6,1,0,20,5,2]");
+	}
+
+	@Test
+	public void roundTripsValuedRuns() throws Exception {
+		final Random random = new Random(11);
+		for (int i = 0; i < 50; i++) {
+			final int[] values = randomValues(random, 1 + random.nextInt(300));
+			assertEquals(decode(encode(values, true), values.length, true), values);
+		}
+	}
+
+	@Test
+	public void roundTripsFlaggedRuns() throws Exception {
+		final Random random = new Random(12);
+		for (int i = 0; i < 50; i++) {
+			final int[] values = randomValues(random, 1 + random.nextInt(300));
+			final int[] flags = new int[values.length];
+			for (int row = 0; row < values.length; row++) {
+				flags[row] = values[row] == RunLengthWriter.NONE ? RunLengthWriter.NONE : 0;
+			}
+			assertEquals(decode(encode(flags, false), flags.length, false), flags);
+		}
+	}
+
+	@Test
+	public void writesNothingWithoutValues() throws Exception {
+		final int[] values = new int[100];
+		Arrays.fill(values, RunLengthWriter.NONE);
+		assertEquals(encode(values, true), "[]");
+		assertEquals(encode(new int[0], false), "[]");
+	}
+
+	private static int[] randomValues(Random random, int size) {
+		final int[] values = new int[size];
+		for (int row = 0; row < size; row++) {
+			values[row] = row > 0 && random.nextInt(6) > 0 ? values[row - 1] : random.nextInt(5) - 1;
+		}
+		return values;
+	}
+
+	private static String encode(int[] values, boolean valued) throws Exception {
+		final StringWriter writer = new StringWriter();
+		final VarWriter array = new VarWriter(writer, false);
+		final RunLengthWriter runs = new RunLengthWriter(array, valued);
+		for (int row = 0; row < values.length; row++) {
+			runs.append(row, values[row]);
+		}
+		runs.flush();
+		array.closeVar();
+		return writer.toString();
+	}
+
+	/**
+	 * Expands the runs as the widget does, rows outside any run are NONE.
+	 */
+	private static int[] decode(String json, int size, boolean valued) throws Exception {
+		final int[] values = new int[size];
+		Arrays.fill(values, RunLengthWriter.NONE);
+		final JSONArray runs = new JSONArray(json);
+		final int step = valued ? 3 : 2;
+		assertEquals(runs.length() % step, 0);
+		int previousEnd = -1;
+		for (int i = 0; i < runs.length(); i += step) {
+			final int start = runs.getInt(i);
+			final int end = start + runs.getInt(i + 1);
+			// runs are ascending, non-empty and don't overlap
+			assertTrue(start >= previousEnd && end > start);
+			previousEnd = end;
+			for (int row = start; row < end; row++) {
+				values[row] = valued ? runs.getInt(i + 2) : 0;
+			}
+		}
+		return values;
+	}
+}
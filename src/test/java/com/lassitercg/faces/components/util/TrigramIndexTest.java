@@ -0,0 +1,66 @@
+package com.lassitercg.faces.components.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class TrigramIndexTest {
+
+	private static final String[] VALUES = { "alpha", null, "beta", "alphabet", "", "gamma ray", "al", "abab",
+			"bababa" };
+
+	@Test
+	public void findsRowsContainingQuery() {
+		final TrigramIndex index = new TrigramIndex(VALUES);
+		assertEquals(index.find("alp"), new int[] { 0, 3 });
+		assertEquals(index.find("bet"), new int[] { 2, 3 });
+		assertEquals(index.find("alphabet"), new int[] { 3 });
+		assertEquals(index.find("zzz"), new int[0]);
+		// all trigrams present, but not contiguous
+		assertEquals(index.find("abababa"), new int[0]);
+	}
+
+	@Test
+	public void checksShortQueriesAgainstAllRows() {
+		final TrigramIndex index = new TrigramIndex(VALUES);
+		assertEquals(index.find("al"), new int[] { 0, 3, 6 });
+		assertEquals(index.find("a"), new int[] { 0, 2, 3, 5, 6, 7, 8 });
+		assertEquals(index.find(""), new int[] { 0, 2, 3, 4, 5, 6, 7, 8 });
+	}
+
+	@Test
+	public void matchesLinearScan() {
+		final Random random = new Random(42);
+		final String[] values = new String[2000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(10) == 0 ? null : randomString(random, random.nextInt(12));
+		}
+		final TrigramIndex index = new TrigramIndex(values);
+		for (int q = 0; q < 200; q++) {
+			final String query = randomString(random, 1 + random.nextInt(5));
+			final List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null && values[i].contains(query)) {
+					expected.add(i);
+				}
+			}
+			final int[] found = index.find(query);
+			assertEquals(found.length, expected.size(), query);
+			for (int i = 0; i < found.length; i++) {
+				assertEquals(found[i], expected.get(i).intValue(), query);
+			}
+		}
+	}
+
+	private static String randomString(Random random, int length) {
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(4)));
+		}
+		return sb.toString();
+	}
+}